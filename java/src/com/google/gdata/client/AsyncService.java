@@ -0,0 +1,338 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gdata.data.AbstractExtension;
+import com.google.gdata.data.IEntry;
+import com.google.gdata.data.IFeed;
+import com.google.gdata.util.Version;
+import com.google.gdata.util.VersionRegistry;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AsyncService class provides a non-blocking facade over a
+ * {@link Service}.  Each operation is submitted to an executor and returns a
+ * {@link ListenableFuture} that completes with the result of the matching
+ * {@link Service} method, or fails with the {@link java.io.IOException} or
+ * {@link com.google.gdata.util.ServiceException} it threw.
+ * <p>
+ * The per-thread state that affects how requests are generated and responses
+ * are parsed (the thread protocol versions held by {@link VersionRegistry}
+ * and the {@link AbstractExtension} strict validation flag) is captured on
+ * the calling thread and applied on the executing thread for the duration of
+ * the call, so an asynchronous call behaves like its blocking counterpart.
+ * <p>
+ * The wrapped service is shared by all executing threads and must not be
+ * reconfigured while calls are outstanding.
+ *
+ * 
+ */
+public class AsyncService {
+
+  /**
+   * Executor used when none is provided: an unbounded pool of daemon threads
+   * that are discarded after being idle for a minute.
+   */
+  private static final ListeningExecutorService DEFAULT_EXECUTOR =
+      MoreExecutors.listeningDecorator(
+          Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+              Thread thread =
+                  new Thread(r, "gdata-async-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          }));
+
+  private final Service service;
+  private final ListeningExecutorService executor;
+
+  /**
+   * Constructs a new AsyncService that executes calls on a shared pool of
+   * daemon threads.
+   *
+   * @param service service used to execute the calls.
+   */
+  public AsyncService(Service service) {
+    this(service, DEFAULT_EXECUTOR);
+  }
+
+  /**
+   * Constructs a new AsyncService that executes calls using the provided
+   * executor.  The executor remains owned by the caller.
+   *
+   * @param service service used to execute the calls.
+   * @param executor executor that runs the calls.
+   */
+  public AsyncService(Service service, ExecutorService executor) {
+    if (service == null) {
+      throw new NullPointerException("service");
+    }
+    if (executor == null) {
+      throw new NullPointerException("executor");
+    }
+    this.service = service;
+    this.executor = MoreExecutors.listeningDecorator(executor);
+  }
+
+  /**
+   * Returns the service used to execute the calls.
+   */
+  public Service getService() {
+    return service;
+  }
+
+  /**
+   * Asynchronously retrieves a feed.
+   *
+   * @see Service#getFeed(URL, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final URL feedUrl,
+      final Class<F> feedClass) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(feedUrl, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously retrieves a feed if its entity tag has changed.
+   *
+   * @see Service#getFeed(URL, Class, String)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final URL feedUrl,
+      final Class<F> feedClass, final String etag) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(feedUrl, feedClass, etag);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously retrieves the feed resulting from a query.
+   *
+   * @see Service#getFeed(Query, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final Query query,
+      final Class<F> feedClass) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(query, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously executes a query.
+   *
+   * @see Service#query(Query, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> query(final Query query,
+      final Class<F> feedClass) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.query(query, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously retrieves an entry.
+   *
+   * @see Service#getEntry(URL, Class)
+   */
+  public <E extends IEntry> ListenableFuture<E> getEntry(final URL entryUrl,
+      final Class<E> entryClass) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.getEntry(entryUrl, entryClass);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously retrieves an entry if its entity tag has changed.
+   *
+   * @see Service#getEntry(URL, Class, String)
+   */
+  public <E extends IEntry> ListenableFuture<E> getEntry(final URL entryUrl,
+      final Class<E> entryClass, final String etag) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.getEntry(entryUrl, entryClass, etag);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously inserts an entry into a feed.
+   *
+   * @see Service#insert(URL, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> insert(final URL feedUrl,
+      final E entry) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.insert(feedUrl, entry);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously updates an entry.
+   *
+   * @see Service#update(URL, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> update(final URL entryUrl,
+      final E entry) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.update(entryUrl, entry);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously updates an entry if its entity tag matches.
+   *
+   * @see Service#update(URL, IEntry, String)
+   */
+  public <E extends IEntry> ListenableFuture<E> update(final URL entryUrl,
+      final E entry, final String etag) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.update(entryUrl, entry, etag);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously patches an entry.
+   *
+   * @see Service#patch(URL, String, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> patch(final URL entryUrl,
+      final String fields, final E entry) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.patch(entryUrl, fields, entry);
+      }
+    });
+  }
+
+  /**
+   * Asynchronously deletes an entry.  The returned future completes with
+   * {@code null}.
+   *
+   * @see Service#delete(URL)
+   */
+  public ListenableFuture<Void> delete(final URL resourceUrl) {
+    return delete(resourceUrl, null);
+  }
+
+  /**
+   * Asynchronously deletes an entry if its entity tag matches.  The returned
+   * future completes with {@code null}.
+   *
+   * @see Service#delete(URL, String)
+   */
+  public ListenableFuture<Void> delete(final URL resourceUrl,
+      final String etag) {
+    return submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        service.delete(resourceUrl, etag);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Asynchronously executes a batch feed.
+   *
+   * @see Service#batch(URL, IFeed)
+   */
+  public <F extends IFeed> ListenableFuture<F> batch(final URL feedUrl,
+      final F inputFeed) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.batch(feedUrl, inputFeed);
+      }
+    });
+  }
+
+  /**
+   * Submits a call to the executor, carrying over the thread state of the
+   * calling thread.
+   */
+  protected <T> ListenableFuture<T> submit(final Callable<T> call) {
+    final ThreadState callerState = ThreadState.capture();
+    return executor.submit(new Callable<T>() {
+      public T call() throws Exception {
+        ThreadState executorState = ThreadState.capture();
+        callerState.apply();
+        try {
+          return call.call();
+        } finally {
+          executorState.apply();
+        }
+      }
+    });
+  }
+
+  /**
+   * The per-thread state that influences request generation and response
+   * parsing.
+   */
+  private static class ThreadState {
+
+    private final List<Version> versions;
+    private final boolean strictValidation;
+
+    private ThreadState(List<Version> versions, boolean strictValidation) {
+      this.versions = versions;
+      this.strictValidation = strictValidation;
+    }
+
+    static ThreadState capture() {
+      return new ThreadState(VersionRegistry.get().getThreadVersions(),
+          AbstractExtension.isStrictValidation());
+    }
+
+    void apply() {
+      VersionRegistry.get().setThreadVersions(versions);
+      if (strictValidation) {
+        AbstractExtension.enableStrictValidation();
+      } else {
+        AbstractExtension.disableStrictValidation();
+      }
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.data.IEntry;
+import com.google.gdata.data.IFeed;
+import com.google.gdata.data.ILink;
+import com.google.gdata.util.ServiceException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The FeedIterator class walks all the pages of a paged feed by following
+ * their {@code rel="next"} links, and the entries they contain.
+ * <p>
+ * Pages are retrieved in the background: while the caller consumes one page,
+ * up to {@code prefetchDepth} following pages are already being fetched and
+ * parsed.  With a prefetch depth of zero, each page is fetched by the calling
+ * thread when it is needed.
+ * <p>
+ * The basic usage pattern is:
+ * <pre>
+ * FeedIterator&lt;ContactFeed&gt; iter =
+ *     service.getFeedIterator(feedUrl, ContactFeed.class);
+ * try {
+ *   while (iter.hasNext()) {
+ *     ContactEntry entry = (ContactEntry) iter.next();
+ *     ...
+ *   }
+ * } finally {
+ *   iter.close();
+ * }
+ * </pre>
+ * Callers that stop before the last page should call {@link #close()} to
+ * stop the background retrieval.  If they do not, the background task stops
+ * by itself once the consumer has not taken a page for the idle timeout, and
+ * retrieval resumes on the calling thread's next request for a page.
+ * Instances are not thread safe.
+ *
+ * @param <F> feed type of the pages
+ * @see Service#getFeedIterator(URL, Class, int)
+ */
+public class FeedIterator<F extends IFeed> implements Closeable {
+
+  /**
+   * Default number of pages fetched ahead of the consumer.
+   */
+  public static final int DEFAULT_PREFETCH_DEPTH = 1;
+
+  /**
+   * Default time, in milliseconds, that the background task waits for the
+   * consumer to make room for another page before stopping.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+  /**
+   * Queue marker indicating that the last page has been retrieved.
+   */
+  private static final Object END = new Object();
+
+  /**
+   * Queue element holding the failure that ended background retrieval.
+   */
+  private static class Failure {
+    private final Throwable cause;
+
+    private Failure(Throwable cause) {
+      this.cause = cause;
+    }
+  }
+
+  /**
+   * Queue element indicating that the background task stopped because the
+   * consumer was idle, holding the target of the next page.
+   */
+  private static class Resume {
+    private final Object target;
+
+    private Resume(Object target) {
+      this.target = target;
+    }
+  }
+
+  private final Service service;
+  private final Class<F> feedClass;
+
+  // Background retrieval state, or null if not prefetching.
+  private final BlockingQueue<Object> pages;
+  private final Semaphore prefetchPermits;
+  private Future<Void> producer;
+  private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private volatile boolean closed;
+
+  // Synchronous retrieval state, used if not prefetching.  The target of the
+  // next fetch is either a Query or a URL.
+  private Object nextTarget;
+
+  private Object nextPage;
+  private boolean done;
+  private Iterator<? extends IEntry> entries;
+
+  /**
+   * Constructs a new FeedIterator.
+   *
+   * @param service service used to retrieve the pages.
+   * @param firstPage the {@link Query} or {@link URL} of the first page.
+   * @param feedClass the class used to represent the pages.
+   * @param prefetchDepth maximum number of pages fetched ahead of the
+   *        consumer.
+   */
+  FeedIterator(Service service, Object firstPage, Class<F> feedClass,
+      int prefetchDepth) {
+    if (prefetchDepth < 0) {
+      throw new IllegalArgumentException("Prefetch depth cannot be negative");
+    }
+    this.service = service;
+    this.feedClass = feedClass;
+    if (prefetchDepth == 0) {
+      nextTarget = firstPage;
+      pages = null;
+      prefetchPermits = null;
+      producer = null;
+    } else {
+      pages = new LinkedBlockingQueue<Object>();
+      prefetchPermits = new Semaphore(prefetchDepth);
+      producer = new AsyncService(service).submit(new Producer(firstPage));
+    }
+  }
+
+  /**
+   * Background task that retrieves pages in sequence, staying at most
+   * {@code prefetchDepth} pages ahead of the consumer.
+   */
+  private class Producer implements Callable<Void> {
+
+    private final Object firstPage;
+
+    private Producer(Object firstPage) {
+      this.firstPage = firstPage;
+    }
+
+    public Void call() {
+      Object target = firstPage;
+      try {
+        while (target != null) {
+          if (!prefetchPermits.tryAcquire(idleTimeout, TimeUnit.MILLISECONDS)) {
+            pages.put(new Resume(target));
+            return null;
+          }
+          if (closed) {
+            return null;
+          }
+          F page = fetch(target);
+          target = getNextUrl(page);
+          pages.put(page);
+        }
+        pages.put(END);
+      } catch (InterruptedException e) {
+        // Iteration was closed.
+      } catch (Throwable t) {
+        pages.add(new Failure(t));
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Sets the time, in milliseconds, that the background task waits for the
+   * consumer to take a page before stopping.  Retrieval resumes when the
+   * consumer next asks for a page.
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    if (idleTimeout < 0) {
+      throw new IllegalArgumentException("Idle timeout cannot be negative");
+    }
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Returns {@code true} if there are more pages.
+   *
+   * @throws IOException error communicating with the GData service.
+   * @throws ServiceException error retrieving the next page.
+   */
+  public boolean hasNextPage() throws IOException, ServiceException {
+    if (nextPage == null && !done) {
+      if (producer == null) {
+        fetchNextPage();
+      } else {
+        takeNextPage();
+      }
+    }
+    return nextPage != null;
+  }
+
+  /**
+   * Returns the next page.
+   *
+   * @throws NoSuchElementException if there are no more pages.
+   * @throws IOException error communicating with the GData service.
+   * @throws ServiceException error retrieving the next page.
+   */
+  public F nextPage() throws IOException, ServiceException {
+    if (!hasNextPage()) {
+      throw new NoSuchElementException();
+    }
+    F page = feedClass.cast(nextPage);
+    nextPage = null;
+    entries = null;
+    return page;
+  }
+
+  /**
+   * Returns {@code true} if there are more entries in the current or any of
+   * the following pages.  Entry and page iteration should not be mixed.
+   *
+   * @throws IOException error communicating with the GData service.
+   * @throws ServiceException error retrieving the next page.
+   */
+  public boolean hasNext() throws IOException, ServiceException {
+    while (entries == null || !entries.hasNext()) {
+      if (!hasNextPage()) {
+        return false;
+      }
+      entries = nextPage().getEntries().iterator();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the next entry.
+   *
+   * @throws NoSuchElementException if there are no more entries.
+   * @throws IOException error communicating with the GData service.
+   * @throws ServiceException error retrieving the next page.
+   */
+  public IEntry next() throws IOException, ServiceException {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return entries.next();
+  }
+
+  /**
+   * Stops iteration and any background retrieval of pages.
+   */
+  public void close() {
+    closed = true;
+    done = true;
+    nextPage = null;
+    entries = null;
+    if (producer != null) {
+      producer.cancel(true);
+      pages.clear();
+      // Wake the background task if it is waiting for a permit.
+      prefetchPermits.release();
+    }
+  }
+
+  /**
+   * Retrieves the next page on the calling thread.
+   */
+  private void fetchNextPage() throws IOException, ServiceException {
+    if (nextTarget == null) {
+      done = true;
+      return;
+    }
+    try {
+      F page = fetch(nextTarget);
+      nextTarget = getNextUrl(page);
+      nextPage = page;
+    } catch (IOException e) {
+      done = true;
+      throw e;
+    } catch (ServiceException e) {
+      done = true;
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for the next page retrieved by the background task.
+   */
+  private void takeNextPage() throws IOException, ServiceException {
+    Object page;
+    try {
+      page = pages.take();
+      while (page instanceof Resume) {
+        producer = new AsyncService(service).submit(
+            new Producer(((Resume) page).target));
+        page = pages.take();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting for next page");
+    }
+    prefetchPermits.release();
+
+    if (page == END) {
+      done = true;
+    } else if (page instanceof Failure) {
+      close();
+      Throwable cause = ((Failure) page).cause;
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof ServiceException) {
+        throw (ServiceException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw (RuntimeException) cause;
+    } else {
+      nextPage = page;
+    }
+  }
+
+  private F fetch(Object target) throws IOException, ServiceException {
+    if (target instanceof Query) {
+      return service.getFeed((Query) target, feedClass);
+    }
+    return service.getFeed((URL) target, feedClass);
+  }
+
+  private static URL getNextUrl(IFeed page) throws IOException {
+    ILink nextLink = page.getNextLink();
+    return (nextLink != null) ? new URL(nextLink.getHref()) : null;
+  }
+}
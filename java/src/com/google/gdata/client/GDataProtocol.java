@@ -121,6 +121,26 @@ public class GDataProtocol {
      */
     public static final String X_UPLOAD_CONTENT_LENGTH = "X-Upload-Content-Length";
 
+    /**
+     * The RANGE header is used to request part of a media resource, as a
+     * byte range of the form {@code bytes=<first>-[<last>]}.
+     */
+    public static final String RANGE = "Range";
+
+    /**
+     * The CONTENT_RANGE header is used to return the byte range of a media
+     * resource contained in a partial response, and the total length of the
+     * resource.
+     */
+    public static final String CONTENT_RANGE = "Content-Range";
+
+    /**
+     * The IF_RANGE header is used to make a range request conditional: the
+     * range is only returned if the resource still has the given entity tag,
+     * and the full resource is returned otherwise.
+     */
+    public static final String IF_RANGE = "If-Range";
+
   }
 
   /**
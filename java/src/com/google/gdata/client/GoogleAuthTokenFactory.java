@@ -49,6 +49,14 @@ import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A factory for creating Google authentication tokens (ClientLogin and
@@ -220,12 +228,62 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
   /**
    * Encapsulates the OAuth 2.0 information used by applications to login on
    * behalf of a user.
+   * <p>
+   * The access token is refreshed in the background once it is about to
+   * expire, while requests keep using the current token until the new one
+   * is received.  Concurrent refreshes, proactive or after a request failed
+   * with an expired token, are collapsed into a single refresh request.
    */
   public static class OAuth2Token implements HttpAuthToken {
 
     static final String HEADER_PREFIX = "Bearer ";
+
+    /**
+     * Default number of seconds before the access token expires when it is
+     * refreshed in the background.
+     */
+    public static final long DEFAULT_REFRESH_WINDOW = 300;
+
+    /**
+     * Number of milliseconds after a refresh during which a request failing
+     * with an expired token is assumed to have used the previous token, so
+     * the token isn't refreshed again.
+     */
+    private static final long RECENT_REFRESH_MILLIS = 10000;
+
+    /**
+     * Number of milliseconds after a failed refresh during which no further
+     * refresh is started in the background.  Requests with an expired token
+     * still wait for a new refresh.
+     */
+    private static final long FAILED_REFRESH_BACKOFF_MILLIS = 30000;
+
+    private static final Logger logger =
+        Logger.getLogger(OAuth2Token.class.getName());
+
+    private static final Executor REFRESH_EXECUTOR =
+        Executors.newCachedThreadPool(new ThreadFactory() {
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "gdata-oauth2-refresh");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+
     final Credential credential;
 
+    private volatile long refreshWindow = DEFAULT_REFRESH_WINDOW;
+
+    // Refresh in progress, or null.  Guarded by this.
+    private FutureTask<Boolean> refresh;
+
+    // Time of the last successful refresh.  Guarded by this.
+    private long lastRefreshTime;
+
+    // Time of the last refresh that failed or returned false.  Guarded by
+    // this.
+    private long lastFailedRefreshTime;
+
     /**
      * Create a new {@link OAuth2Token} object.  Store the {@link Credential} to
      * use when generating the header.
@@ -236,30 +294,140 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
       this.credential = credential;
     }
 
+    /**
+     * Sets how many seconds before the access token expires it is refreshed
+     * in the background, or {@code 0} to only refresh it after a request
+     * fails.
+     */
+    public void setRefreshWindow(long seconds) {
+      if (seconds < 0) {
+        throw new IllegalArgumentException("Invalid refresh window: " + seconds);
+      }
+      this.refreshWindow = seconds;
+    }
+
     /**
      * Returns the authorization header using the user's OAuth 2.0 credentials.
+     * If the access token is about to expire, a refresh is started in the
+     * background, unless a refresh failed shortly before.  If it has already
+     * expired, the refresh is waited for.
      *
      * @param requestUrl the URL being requested
      * @param requestMethod the HTTP method of the request
      * @return the authorization header to be used for the request
      */
     public String getAuthorizationHeader(URL requestUrl, String requestMethod) {
+      Long expiresIn = this.credential.getExpiresInSeconds();
+      if (expiresIn != null && expiresIn <= refreshWindow
+          && this.credential.getRefreshToken() != null) {
+        if (expiresIn > 0) {
+          if (!isBackingOff()) {
+            startRefresh(true);
+          }
+        } else {
+          try {
+            awaitRefresh(startRefresh(false));
+          } catch (AuthenticationException e) {
+            // Send the expired token; the failed request will be handled as
+            // an expired session.
+            logger.log(Level.WARNING, "Failed to refresh access token", e);
+          }
+        }
+      }
       return HEADER_PREFIX + this.credential.getAccessToken();
     }
 
     /**
      * Use the {@link Credential} to request a new access token from the
-     * authorization endpoint.
+     * authorization endpoint.  If a refresh is already in progress, its
+     * result is returned instead of starting another one.
      *
      * @return whether a new access token was successfully retrieved
      */
     public boolean refreshToken() throws AuthenticationException {
+      synchronized (this) {
+        if (refresh == null && lastRefreshTime != 0
+            && System.currentTimeMillis() - lastRefreshTime
+                < RECENT_REFRESH_MILLIS) {
+          return true;
+        }
+      }
+      return awaitRefresh(startRefresh(false));
+    }
+
+    /**
+     * Returns {@code true} if a refresh failed recently enough that no
+     * refresh should be started in the background, so that requests don't
+     * each trigger a refresh while the authorization server is failing.
+     */
+    private synchronized boolean isBackingOff() {
+      return lastFailedRefreshTime != 0
+          && System.currentTimeMillis() - lastFailedRefreshTime
+              < FAILED_REFRESH_BACKOFF_MILLIS;
+    }
+
+    /**
+     * Returns the refresh in progress, or starts one.  A new refresh runs in
+     * the background or, if {@code background} is {@code false}, in the
+     * calling thread.
+     */
+    private FutureTask<Boolean> startRefresh(boolean background) {
+      final FutureTask<Boolean> task;
+      synchronized (this) {
+        if (refresh != null) {
+          return refresh;
+        }
+        task = new FutureTask<Boolean>(new Callable<Boolean>() {
+          public Boolean call() throws IOException {
+            return credential.refreshToken();
+          }
+        });
+        refresh = task;
+      }
+      Runnable runner = new Runnable() {
+        public void run() {
+          task.run();
+          synchronized (OAuth2Token.this) {
+            refresh = null;
+            boolean refreshed = false;
+            try {
+              refreshed = task.get();
+            } catch (Exception e) {
+              // Reported to the callers waiting for the task.
+            }
+            if (refreshed) {
+              lastRefreshTime = System.currentTimeMillis();
+              lastFailedRefreshTime = 0;
+            } else {
+              lastFailedRefreshTime = System.currentTimeMillis();
+            }
+          }
+        }
+      };
+      if (background) {
+        REFRESH_EXECUTOR.execute(runner);
+      } else {
+        runner.run();
+      }
+      return task;
+    }
+
+    private boolean awaitRefresh(FutureTask<Boolean> task)
+        throws AuthenticationException {
       try {
-        return this.credential.refreshToken();
-      } catch (IOException e) {
-        AuthenticationException ae =
-            new AuthenticationException("Failed to refresh access token: " + e.getMessage());
-        ae.initCause(e);
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new AuthenticationException(
+            "Interrupted while refreshing access token");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        AuthenticationException ae = new AuthenticationException(
+            "Failed to refresh access token: " + cause.getMessage());
+        ae.initCause(cause);
         throw ae;
       }
     }
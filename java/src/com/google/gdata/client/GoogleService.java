@@ -24,9 +24,13 @@ import com.google.gdata.client.authn.oauth.OAuthException;
 import com.google.gdata.client.authn.oauth.OAuthParameters;
 import com.google.gdata.client.authn.oauth.OAuthSigner;
 import com.google.gdata.client.batch.BatchInterruptedException;
+import com.google.gdata.client.http.CachingGDataRequestFactory;
 import com.google.gdata.client.http.GoogleGDataRequest;
 import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
+import com.google.gdata.data.EntryListener;
 import com.google.gdata.data.IEntry;
 import com.google.gdata.data.IFeed;
 import com.google.gdata.util.AuthenticationException;
@@ -537,9 +541,7 @@ public class GoogleService extends Service implements TokenListener {
                                     ContentType contentType)
       throws IOException, ServiceException {
     GDataRequest request = super.createRequest(type, requestUrl, contentType);
-    if (request instanceof GoogleGDataRequest) {
-      ((GoogleGDataRequest) request).setService(this);
-    }
+    setRequestService(request);
     return request;
   }
 
@@ -547,10 +549,22 @@ public class GoogleService extends Service implements TokenListener {
   protected GDataRequest createRequest(Query query, ContentType contentType)
       throws IOException, ServiceException {
     GDataRequest request = super.createRequest(query, contentType);
+    setRequestService(request);
+    return request;
+  }
+
+  /**
+   * Associates a request, or the request wrapped by a caching request factory,
+   * with this service.
+   */
+  private void setRequestService(GDataRequest request) {
+    if (request instanceof CachingGDataRequestFactory.CachingRequest) {
+      request = ((CachingGDataRequestFactory.CachingRequest) request)
+          .getDelegate();
+    }
     if (request instanceof GoogleGDataRequest) {
       ((GoogleGDataRequest) request).setService(this);
     }
-    return request;
   }
 
   @Override
@@ -683,6 +697,21 @@ public class GoogleService extends Service implements TokenListener {
     return super.getFeed(query, feedClass, etag);
   }
 
+  @Override
+  public <F extends BaseFeed<?, E>, E extends BaseEntry<?>> F streamFeed(
+      URL feedUrl, Class<F> feedClass, EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    try {
+      return super.streamFeed(feedUrl, feedClass, listener);
+    } catch (RedirectRequiredException e) {
+      feedUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(feedUrl, feedClass, listener);
+  }
+
   @Override
   public void delete(URL entryUrl) throws IOException, ServiceException {
 
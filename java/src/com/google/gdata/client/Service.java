@@ -20,9 +20,14 @@ import com.google.gdata.util.common.base.Preconditions;
 import com.google.gdata.util.common.net.UriParameterMap;
 import com.google.gdata.client.AuthTokenFactory.AuthToken;
 import com.google.gdata.client.batch.BatchInterruptedException;
+import com.google.gdata.client.http.CachingGDataRequestFactory;
 import com.google.gdata.client.http.HttpGDataRequest;
+import com.google.gdata.client.http.RetryPolicy;
 import com.google.gdata.data.AbstractExtension;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
+import com.google.gdata.data.EntryListener;
 import com.google.gdata.data.ExtensionProfile;
 import com.google.gdata.data.IAtom;
 import com.google.gdata.data.IEntry;
@@ -67,6 +72,8 @@ import java.net.URI;
 import java.net.URL;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The Service class represents a client connection to a GData service. It
@@ -638,6 +645,80 @@ public class Service {
     this.extProfile = v;
   }
 
+  /**
+   * Whether services share frozen extension profiles.
+   */
+  private static volatile boolean shareExtensionProfiles = false;
+
+  /**
+   * Frozen extension profiles shared by services, by service type.
+   */
+  private static final ConcurrentMap<Class<?>, ExtensionProfile>
+      sharedProfiles = new ConcurrentHashMap<Class<?>, ExtensionProfile>();
+
+  /**
+   * Configures whether services share their extension profiles.  When
+   * enabled, the first service of each type declares its extensions and
+   * {@link ExtensionProfile#freeze() freezes} its profile, and later services
+   * of the same type reuse that profile instead of declaring their own.
+   * This saves the cost of building a profile for each service instance,
+   * and lets concurrent parsers use the profile without locking.
+   * <p>
+   * Sharing is disabled by default, because a frozen profile rejects new
+   * declarations: it should only be enabled if applications don't declare
+   * extensions of their own on the profiles of services.  Profiles that are
+   * {@link ExtensionProfile#isAutoExtending() auto-extending} add
+   * declarations while parsing, so they are never shared.
+   */
+  public static void setShareExtensionProfiles(boolean share) {
+    shareExtensionProfiles = share;
+  }
+
+  /**
+   * Returns whether services share their extension profiles.
+   */
+  public static boolean isShareExtensionProfiles() {
+    return shareExtensionProfiles;
+  }
+
+  /**
+   * Uses the shared extension profile of this service type, if sharing is
+   * enabled and the profile has already been built.  Services call this
+   * before declaring their extensions, and skip the declarations if it
+   * returns {@code true}.
+   *
+   * @return {@code true} if the shared profile is used.
+   */
+  protected boolean useSharedExtensionProfile() {
+    if (!shareExtensionProfiles) {
+      return false;
+    }
+    ExtensionProfile shared = sharedProfiles.get(getClass());
+    if (shared == null) {
+      return false;
+    }
+    extProfile = shared;
+    return true;
+  }
+
+  /**
+   * Freezes the extension profile of this service and shares it with later
+   * services of the same type, if sharing is enabled and the profile is not
+   * auto-extending.  Services call this once they have declared their
+   * extensions.
+   */
+  protected void shareExtensionProfile() {
+    if (!shareExtensionProfiles || extProfile.isAutoExtending()) {
+      return;
+    }
+    extProfile.freeze();
+    ExtensionProfile shared =
+        sharedProfiles.putIfAbsent(getClass(), extProfile);
+    if (shared != null) {
+      extProfile = shared;
+    }
+  }
+
   protected final MetadataRegistry metadataRegistry;
 
   /**
@@ -760,6 +841,7 @@ public class Service {
     GDataRequest request =
         requestFactory.getRequest(type, requestUrl, inputType);
     setTimeouts(request);
+    applyRetryPolicy(request);
     return request;
   }
 
@@ -775,6 +857,7 @@ public class Service {
 
     GDataRequest request = requestFactory.getRequest(query, inputType);
     setTimeouts(request);
+    applyRetryPolicy(request);
     return request;
   }
 
@@ -792,6 +875,23 @@ public class Service {
   }
 
 
+  /**
+   * Sets the retry policy on a request, if it is an HTTP request.
+   */
+  private void applyRetryPolicy(GDataRequest request) {
+    if (retryPolicy == null) {
+      return;
+    }
+    if (request instanceof CachingGDataRequestFactory.CachingRequest) {
+      request =
+          ((CachingGDataRequestFactory.CachingRequest) request).getDelegate();
+    }
+    if (request instanceof HttpGDataRequest) {
+      ((HttpGDataRequest) request).setRetryPolicy(retryPolicy);
+    }
+  }
+
+
   /**
    * Content type of data posted to the GData service. Defaults to Atom using
    * UTF-8 character set.
@@ -864,6 +964,34 @@ public class Service {
     readTimeout = timeout;
   }
 
+
+  /**
+   * Client configured retry policy, or {@code null} if requests that fail
+   * with a transient error are not retried.
+   */
+  private RetryPolicy retryPolicy = null;
+
+
+  /**
+   * Sets the policy used to retry requests that fail with a transient error,
+   * such as a 503 (Service Unavailable) response.  The same policy may be
+   * shared by several services, so that they share the per-host retry budget.
+   *
+   * @param retryPolicy the retry policy, or {@code null} to never retry.
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+
+  /**
+   * Returns the policy used to retry requests that fail with a transient
+   * error, or {@code null} if they are not retried.
+   */
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
   /**
    * The alternate representation registry that describes formats supported by
    * the remote GData service.
@@ -1140,6 +1268,131 @@ public class Service {
     }
   }
 
+  /**
+   * Retrieves the Atom feed associated with a feed URL, passing each entry to
+   * a listener as soon as it has been parsed instead of collecting the
+   * entries in the returned feed.  Memory use is therefore independent of the
+   * number of entries in the response.  The returned feed contains the feed
+   * level data (links, OpenSearch totals, etc.) but no entries.
+   *
+   * @param feedUrl the URL associated with a feed. This URL can include GData
+   *        query parameters.
+   * @param feedClass the class used to represent a service Feed.
+   * @param listener listener that receives the parsed entries.
+   * @return Feed resource referenced by the input URL, without entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws com.google.gdata.util.ParseException error parsing the returned
+   *         feed data, or thrown by the listener.
+   * @throws com.google.gdata.util.ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed, or the response
+   *         is not an Atom feed.
+   */
+  public <F extends BaseFeed<?, E>, E extends BaseEntry<?>> F streamFeed(
+      URL feedUrl, Class<F> feedClass, EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+
+    F feed;
+    try {
+      feed = feedClass.newInstance();
+    } catch (IllegalAccessException iae) {
+      throw new ServiceException(CoreErrorDomain.ERR.cantCreateFeed, iae);
+    } catch (InstantiationException ie) {
+      throw new ServiceException(CoreErrorDomain.ERR.cantCreateFeed, ie);
+    }
+    // Set the service first so that it is propagated to each new entry.
+    feed.setService(this);
+    feed.setEntryListener(listener);
+
+    GDataRequest request = createFeedRequest(feedUrl);
+    try {
+      startVersionScope();
+      request.execute();
+      checkAtomResponse(request);
+      if (!strictValidation) {
+        AbstractExtension.disableStrictValidation();
+      }
+      try {
+        feed.parseAtom(extProfile, request.getResponseStream());
+      } finally {
+        if (!strictValidation) {
+          AbstractExtension.enableStrictValidation();
+        }
+      }
+      return feed;
+    } finally {
+      endVersionScope();
+      request.end();
+    }
+  }
+
+  /**
+   * Verifies that a response can be parsed as Atom, which is the only format
+   * {@link #streamFeed} supports.  Requests for other formats, for example
+   * using {@code alt=json}, are rejected instead of failing in the parser.
+   */
+  private void checkAtomResponse(GDataRequest request)
+      throws IOException, ServiceException {
+    ContentType responseType = request.getResponseContentType();
+    if (responseType == null) {
+      throw new ServiceException(
+          CoreErrorDomain.ERR.responseMissingContentType);
+    }
+    if (!responseType.match(ContentType.ATOM)) {
+      ServiceException se = new ServiceException(
+          CoreErrorDomain.ERR.unsupportedContentType);
+      se.setInternalReason("Feed streaming requires an Atom response, got "
+          + responseType.getMediaType());
+      throw se;
+    }
+  }
+
+  /**
+   * Returns a {@link FeedIterator} that walks all pages of a paged feed,
+   * fetching the next page in the background while the current one is
+   * consumed.
+   *
+   * @param feedUrl the URL associated with the first page of the feed.
+   * @param feedClass the class used to represent the feed pages.
+   * @return iterator over the feed pages and their entries.
+   */
+  public <F extends IFeed> FeedIterator<F> getFeedIterator(URL feedUrl,
+      Class<F> feedClass) {
+    return getFeedIterator(feedUrl, feedClass,
+        FeedIterator.DEFAULT_PREFETCH_DEPTH);
+  }
+
+  /**
+   * Returns a {@link FeedIterator} that walks all pages of a paged feed,
+   * fetching up to {@code prefetchDepth} pages ahead of the one being
+   * consumed.
+   *
+   * @param feedUrl the URL associated with the first page of the feed.
+   * @param feedClass the class used to represent the feed pages.
+   * @param prefetchDepth maximum number of pages fetched ahead of the
+   *        consumer, or zero to fetch each page on demand.
+   * @return iterator over the feed pages and their entries.
+   */
+  public <F extends IFeed> FeedIterator<F> getFeedIterator(URL feedUrl,
+      Class<F> feedClass, int prefetchDepth) {
+    return new FeedIterator<F>(this, feedUrl, feedClass, prefetchDepth);
+  }
+
+  /**
+   * Returns a {@link FeedIterator} that walks all pages resulting from a
+   * query, fetching up to {@code prefetchDepth} pages ahead of the one being
+   * consumed.
+   *
+   * @param query query that selects the first page.
+   * @param feedClass the class used to represent the feed pages.
+   * @param prefetchDepth maximum number of pages fetched ahead of the
+   *        consumer, or zero to fetch each page on demand.
+   * @return iterator over the feed pages and their entries.
+   */
+  public <F extends IFeed> FeedIterator<F> getFeedIterator(Query query,
+      Class<F> feedClass, int prefetchDepth) {
+    return new FeedIterator<F>(this, query, feedClass, prefetchDepth);
+  }
+
   /**
    * Executes a GData feed request against the target service and returns the
    * resulting feed results via an input stream.
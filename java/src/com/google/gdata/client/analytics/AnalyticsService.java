@@ -161,6 +161,9 @@ public class AnalyticsService extends GoogleService {
    * API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new AbPageVariationFeed().declareExtensions(extProfile);
     new AccountFeed().declareExtensions(extProfile);
     new CombinationFeed().declareExtensions(extProfile);
@@ -169,6 +172,7 @@ public class AnalyticsService extends GoogleService {
     new ManagementFeed().declareExtensions(extProfile);
     new SectionFeed().declareExtensions(extProfile);
     new VariationFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -28,11 +28,30 @@ import javax.crypto.spec.SecretKeySpec;
 
 /**
  * Signs strings using HMAC-SHA1.
+ * <p>
+ * Each thread keeps an initialized {@link Mac}, which is reused while the
+ * signing key stays the same, since looking up the algorithm provider and
+ * initializing the key are costly compared to signing a base string.
  *
  * 
  */
 public class OAuthHmacSha1Signer implements OAuthSigner {
 
+  /**
+   * A {@link Mac} and the key it was initialized with.
+   */
+  private static class KeyedMac {
+    final Mac mac;
+    String key;
+
+    KeyedMac(Mac mac) {
+      this.mac = mac;
+    }
+  }
+
+  private static final ThreadLocal<KeyedMac> threadMac =
+      new ThreadLocal<KeyedMac>();
+
   public String getSignature(String baseString, OAuthParameters oauthParameters)
       throws OAuthException {
     try {
@@ -40,9 +59,7 @@ public class OAuthHmacSha1Signer implements OAuthSigner {
         throw new OAuthException("OAuth parameters cannot be null");
       }
       String keyString = getKey(oauthParameters);
-      SecretKey key = new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
-      Mac mac = Mac.getInstance("HmacSHA1");
-      mac.init(key);
+      Mac mac = getMac(keyString);
       return Base64.encode(mac.doFinal(baseString.getBytes("UTF-8")));
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException(e);
@@ -53,6 +70,29 @@ public class OAuthHmacSha1Signer implements OAuthSigner {
     }
   }
 
+  /**
+   * Returns the {@link Mac} of the current thread, initialized with a key.
+   * {@link Mac#doFinal} resets the {@code Mac} to its initialized state, so
+   * it can be reused for the same key.
+   */
+  private static Mac getMac(String keyString)
+      throws UnsupportedEncodingException, NoSuchAlgorithmException,
+      InvalidKeyException {
+    KeyedMac keyedMac = threadMac.get();
+    if (keyedMac == null) {
+      keyedMac = new KeyedMac(Mac.getInstance("HmacSHA1"));
+      threadMac.set(keyedMac);
+    }
+    if (!keyString.equals(keyedMac.key)) {
+      keyedMac.key = null;
+      SecretKey key =
+          new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
+      keyedMac.mac.init(key);
+      keyedMac.key = keyString;
+    }
+    return keyedMac.mac;
+  }
+
   private String getKey(OAuthParameters oauthParameters) {
     return (new StringBuilder())
         .append(OAuthUtil.encode(oauthParameters.getOAuthConsumerSecret()))
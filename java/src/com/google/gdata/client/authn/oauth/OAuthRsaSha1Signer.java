@@ -29,6 +29,9 @@ import java.security.spec.InvalidKeySpecException;
 
 /**
  * Signs strings using RSA-SHA1.
+ * <p>
+ * Each thread keeps a {@link Signature} initialized with the private key,
+ * which is reused for later requests signed by the same thread.
  *
  * 
  */
@@ -36,6 +39,22 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
 
   PrivateKey privateKey;
 
+  /**
+   * A {@link Signature} and the private key it was initialized with.
+   */
+  private static class KeyedSignature {
+    final Signature signature;
+    final PrivateKey key;
+
+    KeyedSignature(Signature signature, PrivateKey key) {
+      this.signature = signature;
+      this.key = key;
+    }
+  }
+
+  private final ThreadLocal<KeyedSignature> threadSignature =
+      new ThreadLocal<KeyedSignature>();
+
   /**
    * Constructor for {@link OAuthRsaSha1Signer}.  This form of the constructor
    * does not set the private key, so be sure to call
@@ -122,8 +141,7 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
       throw new OAuthException("Private key cannot be null");
     }
     try {
-      Signature signer = Signature.getInstance("SHA1withRSA");
-      signer.initSign(privateKey);
+      Signature signer = getSigner(privateKey);
       signer.update(baseString.getBytes("UTF-8"));
       return Base64.encode(signer.sign());
     } catch (NoSuchAlgorithmException e) {
@@ -131,12 +149,32 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
     } catch (InvalidKeyException e) {
       throw new OAuthException("Error generating signature", e);
     } catch (SignatureException e) {
+      // The signature may be left in an unknown state.
+      threadSignature.remove();
       throw new OAuthException("Error generating signature", e);
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException("Error generating signature", e);
     }
   }
 
+  /**
+   * Returns the {@link Signature} of the current thread, initialized with a
+   * private key.  {@link Signature#sign()} resets the {@code Signature} to
+   * its initialized state, so it can be reused for the same key.
+   */
+  private Signature getSigner(PrivateKey key)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    KeyedSignature keyedSignature = threadSignature.get();
+    if (keyedSignature == null || keyedSignature.key != key) {
+      threadSignature.remove();
+      Signature signer = Signature.getInstance("SHA1withRSA");
+      signer.initSign(key);
+      keyedSignature = new KeyedSignature(signer, key);
+      threadSignature.set(keyedSignature);
+    }
+    return keyedSignature.signature;
+  }
+
   public String getSignatureMethod() {
     return "RSA-SHA1";
   }
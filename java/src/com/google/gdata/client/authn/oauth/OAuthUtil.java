@@ -16,7 +16,8 @@
 
 package com.google.gdata.client.authn.oauth;
 
-import com.google.gdata.util.common.base.CharEscapers;
+import com.google.gdata.util.common.base.Escaper;
+import com.google.gdata.util.common.base.PercentEscaper;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
@@ -33,6 +34,13 @@ import java.util.TreeMap;
  */
 public class OAuthUtil {
 
+  /**
+   * Escapes strings as OAuth requires: all characters are percent-encoded
+   * except the unreserved characters of RFC 3986.
+   */
+  private static final Escaper OAUTH_ESCAPER =
+      new PercentEscaper("-_.~", false);
+
   private OAuthUtil() {
   }
 
@@ -78,9 +86,14 @@ public class OAuthUtil {
   public static String getSignatureBaseString(String requestUrl,
       String httpMethod, Map<String, String> baseParameters)
       throws OAuthException {
-    return encode(httpMethod.toUpperCase()) + '&'
-        + encode(normalizeUrl(requestUrl)) + '&'
-        + encode(normalizeParameters(requestUrl, baseParameters));
+    String normalizedUrl = normalizeUrl(requestUrl);
+    StringBuilder baseString = new StringBuilder(
+        httpMethod.length() + normalizedUrl.length() * 2 + 512);
+    baseString.append(encode(httpMethod.toUpperCase())).append('&')
+        .append(encode(normalizedUrl)).append('&');
+    appendParameters(baseString,
+        getSortedParameters(requestUrl, baseParameters), true);
+    return baseString.toString();
   }
 
   /**
@@ -145,6 +158,18 @@ public class OAuthUtil {
    */
   public static String normalizeParameters(
       String requestUrl, Map<String, String> requestParameters) {
+    StringBuilder paramString = new StringBuilder();
+    appendParameters(paramString,
+        getSortedParameters(requestUrl, requestParameters), false);
+    return paramString.toString();
+  }
+
+  /**
+   * Returns the request parameters and the querystring parameters of the
+   * request url, sorted by key.
+   */
+  private static TreeMap<String, String> getSortedParameters(
+      String requestUrl, Map<String, String> requestParameters) {
 
     // use a TreeMap to alphabetize the parameters by key
     TreeMap<String, String> alphaParams =
@@ -156,20 +181,34 @@ public class OAuthUtil {
           parseQuerystring(requestUrl.substring(requestUrl.indexOf('?')+1));
       alphaParams.putAll(queryParameters);
     }
+    return alphaParams;
+  }
 
-    // piece together the base string, encoding each key and value
-    StringBuilder paramString = new StringBuilder();
-    for (Map.Entry<String, String> e : alphaParams.entrySet()) {
+  /**
+   * Appends the normalized parameters string to a buffer.  If
+   * {@code encodeTwice} is {@code true}, the normalized string is appended
+   * encoded, as it appears in the signature base string.  Since encoding
+   * works character by character, each piece is encoded on its own instead
+   * of encoding a copy of the whole string.
+   */
+  private static void appendParameters(StringBuilder out,
+      Map<String, String> sortedParameters, boolean encodeTwice) {
+    String separator = encodeTwice ? "%26" : "&";
+    String equals = encodeTwice ? "%3D" : "=";
+    boolean first = true;
+    for (Map.Entry<String, String> e : sortedParameters.entrySet()) {
       if (e.getValue().length() == 0) {
         continue;
       }
-      if (paramString.length() > 0) {
-        paramString.append("&");
+      if (!first) {
+        out.append(separator);
       }
-      paramString.append(encode(e.getKey())).append("=")
-          .append(encode(e.getValue()));
+      first = false;
+      String key = encode(e.getKey());
+      String value = encode(e.getValue());
+      out.append(encodeTwice ? encode(key) : key).append(equals)
+          .append(encodeTwice ? encode(value) : value);
     }
-    return paramString.toString();
   }
 
   /**
@@ -211,7 +250,6 @@ public class OAuthUtil {
    * @return the url-encoded string
    */
   public static String encode(String stringToEncode) {
-    return CharEscapers.uriEscaper().escape(stringToEncode).replace("+", "%20")
-    .replace("*", "%2A").replace("%7E", "~");
+    return OAUTH_ESCAPER.escape(stringToEncode);
   }
 }
@@ -0,0 +1,511 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.batch;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.gdata.client.AsyncService;
+import com.google.gdata.client.Service;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.IFeed;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.util.ServiceException;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The BatchingService class coalesces individual insert, update and delete
+ * operations into batch feeds.  Operations are queued per batch URL and sent
+ * with {@link Service#batch(URL, IFeed)} when a queue holds
+ * {@link #getMaxBatchSize()} operations or when its oldest operation has
+ * waited {@link #getMaxDelay()} milliseconds, whichever comes first.  Each
+ * operation returns a {@link ListenableFuture} that completes from the
+ * matching entry of the batch response:
+ * <ul>
+ * <li>if the entry has a success {@link BatchStatus}, the future of an insert
+ * or update completes with the response entry and the future of a delete
+ * completes with {@code null}.</li>
+ * <li>if the entry has an error {@link BatchStatus}, the future fails with a
+ * {@link ServiceException} holding the status code, reason and content.</li>
+ * <li>if the batch was interrupted, the futures of the operations the server
+ * didn't process fail with the {@link BatchInterruptedException}.</li>
+ * <li>if the batch request itself failed, all futures fail with the
+ * exception thrown by {@link Service#batch(URL, IFeed)}.</li>
+ * </ul>
+ * <p>
+ * The entries passed to this class are added to a batch feed as is, after
+ * setting their batch id and operation type; they must not be modified until
+ * their future completes.
+ * <p>
+ * Batches are sent through an {@link AsyncService}, which carries over the
+ * thread versions of the thread sending the batch: the thread that filled
+ * it, the thread calling {@link #flush()} or, for batches sent after a delay,
+ * the timer thread.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @param <F> type of the batch feeds.
+ * @param <E> type of the entries in the batch feeds.
+ *
+ *
+ */
+public class BatchingService<F extends BaseFeed<?, E>,
+    E extends BaseEntry<?>> {
+
+  /** Default maximum number of operations in a batch. */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  /** Default maximum delay before a batch is sent, in milliseconds. */
+  public static final long DEFAULT_MAX_DELAY = 1000;
+
+  /**
+   * Timer used when none is provided: a single daemon thread shared by all
+   * instances.  It only starts sending batches, which are executed by the
+   * {@link AsyncService}.
+   */
+  private static final ScheduledExecutorService DEFAULT_TIMER =
+      Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "gdata-batch-timer");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final AsyncService asyncService;
+  private final Class<F> feedClass;
+  private final ScheduledExecutorService timer;
+
+  private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private volatile long maxDelay = DEFAULT_MAX_DELAY;
+
+  /** Batches being filled, by batch URL.  Guarded by {@code this}. */
+  private final Map<String, PendingBatch> pendingBatches =
+      new HashMap<String, PendingBatch>();
+
+  /** Guarded by {@code this}. */
+  private boolean closed;
+
+  /**
+   * Constructs a new BatchingService that sends batches on the shared pool of
+   * daemon threads of {@link AsyncService#AsyncService(Service)}.
+   *
+   * @param service service used to send the batches.
+   * @param feedClass class of the batch feeds, used to create them.
+   */
+  public BatchingService(Service service, Class<F> feedClass) {
+    this(new AsyncService(service), feedClass, DEFAULT_TIMER);
+  }
+
+  /**
+   * Constructs a new BatchingService.
+   *
+   * @param asyncService service used to send the batches.
+   * @param feedClass class of the batch feeds, used to create them.
+   * @param timer executor used to send batches after their maximum delay.
+   *     It remains owned by the caller.
+   */
+  public BatchingService(AsyncService asyncService, Class<F> feedClass,
+      ScheduledExecutorService timer) {
+    if (asyncService == null) {
+      throw new NullPointerException("asyncService");
+    }
+    if (feedClass == null) {
+      throw new NullPointerException("feedClass");
+    }
+    if (timer == null) {
+      throw new NullPointerException("timer");
+    }
+    this.asyncService = asyncService;
+    this.feedClass = feedClass;
+    this.timer = timer;
+  }
+
+  /**
+   * Returns the maximum number of operations in a batch.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of operations in a batch.  A batch is sent as
+   * soon as it reaches this size.
+   *
+   * @param maxBatchSize maximum number of operations, at least 1.
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size: "
+          + maxBatchSize);
+    }
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Returns the maximum delay before a batch is sent, in milliseconds.
+   */
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Sets the maximum delay between queuing the first operation of a batch
+   * and sending it.  The new delay applies to batches started afterwards.
+   *
+   * @param maxDelay maximum delay in milliseconds, {@code 0} to only send
+   *     batches when they are full or flushed.
+   */
+  public void setMaxDelay(long maxDelay) {
+    if (maxDelay < 0) {
+      throw new IllegalArgumentException("Invalid delay: " + maxDelay);
+    }
+    this.maxDelay = maxDelay;
+  }
+
+  /**
+   * Queues the insertion of an entry.
+   *
+   * @param batchUrl batch URL of the feed to insert into.
+   * @param entry entry to insert.
+   * @return future completing with the inserted entry.
+   */
+  public ListenableFuture<E> insert(URL batchUrl, E entry) {
+    return this.<E>add(batchUrl, entry, BatchOperationType.INSERT);
+  }
+
+  /**
+   * Queues the insertion of an entry into a feed.
+   *
+   * @param feed feed to insert into, providing the batch URL.
+   * @param entry entry to insert.
+   * @return future completing with the inserted entry.
+   * @throws IllegalArgumentException if the feed has no batch link.
+   */
+  public ListenableFuture<E> insert(BaseFeed<?, ?> feed, E entry) {
+    return insert(getBatchUrl(feed), entry);
+  }
+
+  /**
+   * Queues the update of an entry.  The entry must have the id of the entry
+   * to update.
+   *
+   * @param batchUrl batch URL of the feed containing the entry.
+   * @param entry updated entry.
+   * @return future completing with the updated entry.
+   */
+  public ListenableFuture<E> update(URL batchUrl, E entry) {
+    return this.<E>add(batchUrl, entry, BatchOperationType.UPDATE);
+  }
+
+  /**
+   * Queues the update of an entry of a feed.
+   *
+   * @param feed feed containing the entry, providing the batch URL.
+   * @param entry updated entry.
+   * @return future completing with the updated entry.
+   * @throws IllegalArgumentException if the feed has no batch link.
+   */
+  public ListenableFuture<E> update(BaseFeed<?, ?> feed, E entry) {
+    return update(getBatchUrl(feed), entry);
+  }
+
+  /**
+   * Queues the deletion of an entry.  The entry must have the id of the entry
+   * to delete.
+   *
+   * @param batchUrl batch URL of the feed containing the entry.
+   * @param entry entry to delete.
+   * @return future completing with {@code null} once the entry is deleted.
+   */
+  public ListenableFuture<Void> delete(URL batchUrl, E entry) {
+    return this.<Void>add(batchUrl, entry, BatchOperationType.DELETE);
+  }
+
+  /**
+   * Queues the deletion of an entry of a feed.
+   *
+   * @param feed feed containing the entry, providing the batch URL.
+   * @param entry entry to delete.
+   * @return future completing with {@code null} once the entry is deleted.
+   * @throws IllegalArgumentException if the feed has no batch link.
+   */
+  public ListenableFuture<Void> delete(BaseFeed<?, ?> feed, E entry) {
+    return delete(getBatchUrl(feed), entry);
+  }
+
+  /**
+   * Sends all queued operations without waiting for their batches to fill up.
+   */
+  public void flush() {
+    List<PendingBatch> batches;
+    synchronized (this) {
+      batches = new ArrayList<PendingBatch>(pendingBatches.values());
+      pendingBatches.clear();
+    }
+    for (PendingBatch batch : batches) {
+      send(batch);
+    }
+  }
+
+  /**
+   * Sends all queued operations and rejects any further operation.  The
+   * futures of the queued operations still complete normally.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    flush();
+  }
+
+  /**
+   * Returns the URL of the batch link of a feed.
+   */
+  private static URL getBatchUrl(BaseFeed<?, ?> feed) {
+    Link batchLink = feed.getFeedBatchLink();
+    if (batchLink == null) {
+      throw new IllegalArgumentException("Feed has no batch link");
+    }
+    try {
+      return new URL(batchLink.getHref());
+    } catch (MalformedURLException e) {
+      throw new IllegalArgumentException(
+          "Invalid batch link: " + batchLink.getHref(), e);
+    }
+  }
+
+  /**
+   * Queues an operation and sends its batch if it is full.
+   */
+  private <T> ListenableFuture<T> add(URL batchUrl, E entry,
+      BatchOperationType type) {
+    if (batchUrl == null) {
+      throw new NullPointerException("batchUrl");
+    }
+    if (entry == null) {
+      throw new NullPointerException("entry");
+    }
+    SettableFuture<T> future = SettableFuture.create();
+    PendingBatch fullBatch = null;
+    synchronized (this) {
+      if (closed) {
+        throw new IllegalStateException("BatchingService is closed");
+      }
+      final String key = batchUrl.toExternalForm();
+      PendingBatch batch = pendingBatches.get(key);
+      if (batch == null) {
+        batch = new PendingBatch(batchUrl);
+        pendingBatches.put(key, batch);
+        long delay = maxDelay;
+        if (delay > 0) {
+          final PendingBatch delayedBatch = batch;
+          batch.timeout = timer.schedule(new Runnable() {
+            public void run() {
+              sendIfPending(key, delayedBatch);
+            }
+          }, delay, TimeUnit.MILLISECONDS);
+        }
+      }
+      batch.add(entry, type, future);
+      if (batch.size() >= maxBatchSize) {
+        pendingBatches.remove(key);
+        fullBatch = batch;
+      }
+    }
+    if (fullBatch != null) {
+      send(fullBatch);
+    }
+    return future;
+  }
+
+  /**
+   * Sends a batch after its maximum delay unless it has already been sent.
+   */
+  private void sendIfPending(String key, PendingBatch batch) {
+    synchronized (this) {
+      if (pendingBatches.get(key) != batch) {
+        return;
+      }
+      pendingBatches.remove(key);
+    }
+    send(batch);
+  }
+
+  /**
+   * Sends a batch that has been removed from the pending batches.
+   */
+  private void send(final PendingBatch batch) {
+    if (batch.timeout != null) {
+      batch.timeout.cancel(false);
+    }
+    ListenableFuture<F> result;
+    try {
+      result = asyncService.batch(batch.url, batch.feed);
+    } catch (RuntimeException e) {
+      // Rejected by the executor
+      batch.failAll(e);
+      return;
+    }
+    Futures.addCallback(result, new FutureCallback<F>() {
+      public void onSuccess(F resultFeed) {
+        batch.complete(resultFeed, null);
+      }
+
+      public void onFailure(Throwable t) {
+        if (t instanceof BatchInterruptedException) {
+          batch.complete(((BatchInterruptedException) t).getIFeed(), t);
+        } else {
+          batch.failAll(t);
+        }
+      }
+    });
+  }
+
+  /**
+   * Creates an empty batch feed.
+   */
+  private F createFeed() {
+    try {
+      return feedClass.newInstance();
+    } catch (InstantiationException e) {
+      throw new IllegalStateException(e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns the exception reported by the batch status of an entry.
+   */
+  private static ServiceException toServiceException(BatchStatus status) {
+    ServiceException e = new ServiceException(status.getCode() + " "
+        + (status.getReason() == null ? "" : status.getReason()));
+    e.setHttpErrorCodeOverride(status.getCode());
+    if (status.getContentType() != null) {
+      e.setResponse(status.getContentType(), status.getContent());
+    }
+    return e;
+  }
+
+  /**
+   * An operation waiting for the response to its batch.
+   */
+  private static class PendingOperation {
+
+    private final BatchOperationType type;
+    private final SettableFuture<?> future;
+
+    private PendingOperation(BatchOperationType type,
+        SettableFuture<?> future) {
+      this.type = type;
+      this.future = future;
+    }
+
+    @SuppressWarnings("unchecked")
+    void succeed(Object result) {
+      ((SettableFuture<Object>) future).set(result);
+    }
+
+    void fail(Throwable t) {
+      future.setException(t);
+    }
+  }
+
+  /**
+   * A batch feed and the operations it contains, by batch id.
+   */
+  private class PendingBatch {
+
+    private final URL url;
+    private final F feed;
+    private final Map<String, PendingOperation> operations =
+        new LinkedHashMap<String, PendingOperation>();
+    private ScheduledFuture<?> timeout;
+
+    private PendingBatch(URL url) {
+      this.url = url;
+      this.feed = createFeed();
+    }
+
+    void add(E entry, BatchOperationType type, SettableFuture<?> future) {
+      String id = Integer.toString(operations.size());
+      BatchUtils.setBatchId(entry, id);
+      BatchUtils.setBatchOperationType(entry, type);
+      feed.getEntries().add(entry);
+      operations.put(id, new PendingOperation(type, future));
+    }
+
+    int size() {
+      return operations.size();
+    }
+
+    /**
+     * Completes the operations from the entries of a batch response.
+     * Operations without a response entry fail with the given exception.
+     */
+    void complete(IFeed resultFeed, Throwable interruption) {
+      if (resultFeed instanceof BaseFeed<?, ?>) {
+        for (BaseEntry<?> entry : ((BaseFeed<?, ?>) resultFeed).getEntries()) {
+          String id = BatchUtils.getBatchId(entry);
+          PendingOperation operation =
+              id == null ? null : operations.remove(id);
+          if (operation == null) {
+            continue;
+          }
+          BatchStatus status = BatchUtils.getBatchStatus(entry);
+          if (status != null
+              && (status.getCode() < 200 || status.getCode() >= 300)) {
+            operation.fail(toServiceException(status));
+          } else if (operation.type == BatchOperationType.DELETE) {
+            operation.succeed(null);
+          } else {
+            operation.succeed(entry);
+          }
+        }
+      }
+      if (!operations.isEmpty()) {
+        failAll(interruption != null ? interruption : new ServiceException(
+            "Batch response has no entry for the operation"));
+      }
+    }
+
+    void failAll(Throwable t) {
+      for (PendingOperation operation : operations.values()) {
+        operation.fail(t);
+      }
+      operations.clear();
+    }
+  }
+}
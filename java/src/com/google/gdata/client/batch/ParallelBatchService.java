@@ -0,0 +1,512 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.batch;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gdata.client.AsyncService;
+import com.google.gdata.client.Service;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.IFeed;
+import com.google.gdata.data.batch.BatchInterrupted;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The ParallelBatchService class executes batch feeds of any size.  The
+ * entries of a feed are split into batches of at most
+ * {@link #getMaxBatchSize()} entries, which are sent concurrently, at most
+ * {@link #getMaxParallelism()} at a time, and the responses are merged into
+ * a single feed.
+ * <p>
+ * Entries are resubmitted, after an exponentially growing delay, when the
+ * server didn't process them because it interrupted the batch
+ * ({@link BatchInterrupted}), or when it reported a retryable
+ * {@link BatchStatus} for them (see {@link #isRetryable(int)}).  Batches
+ * that fail as a whole with an {@link IOException} or with a retryable
+ * {@link ServiceException} are resubmitted only if they were not processed:
+ * when the connection could not be established, when the server rejected
+ * the batch with 429 (too many requests) or 503 (service unavailable), or
+ * when every operation of the batch is a query, update or delete and can
+ * safely be repeated.  Otherwise inserts might be applied twice, so the
+ * failure is thrown instead.  An entry is sent at most
+ * {@link #getMaxRetries()} + 1 times.
+ * <p>
+ * The per-thread state of the calling thread is carried over to the threads
+ * sending the batches, as done by {@link AsyncService}.
+ *
+ *
+ */
+public class ParallelBatchService {
+
+  /** Default maximum number of entries in a batch. */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  /** Default maximum number of batches sent concurrently. */
+  public static final int DEFAULT_MAX_PARALLELISM = 4;
+
+  /** Default maximum number of times an entry is resubmitted. */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  /** Default delay before the first resubmission, in milliseconds. */
+  public static final long DEFAULT_INITIAL_BACKOFF = 1000;
+
+  /** Upper bound of the delay before a resubmission, in milliseconds. */
+  private static final long MAX_BACKOFF = 60000;
+
+  private final Sender sender;
+
+  private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private volatile int maxParallelism = DEFAULT_MAX_PARALLELISM;
+  private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+  private volatile long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+
+  /**
+   * Constructs a new ParallelBatchService that sends batches on the shared
+   * pool of daemon threads of {@link AsyncService#AsyncService(Service)}.
+   *
+   * @param service service used to send the batches.
+   */
+  public ParallelBatchService(Service service) {
+    this.sender = new Sender(service);
+  }
+
+  /**
+   * Constructs a new ParallelBatchService that sends batches using the
+   * provided executor.  The executor remains owned by the caller and should
+   * be able to run {@link #getMaxParallelism()} tasks concurrently.
+   *
+   * @param service service used to send the batches.
+   * @param executor executor that sends the batches.
+   */
+  public ParallelBatchService(Service service, ExecutorService executor) {
+    this.sender = new Sender(service, executor);
+  }
+
+  /**
+   * Returns the service used to send the batches.
+   */
+  public Service getService() {
+    return sender.getService();
+  }
+
+  /**
+   * Returns the maximum number of entries in a batch.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of entries in a batch, which should not exceed
+   * the limit of the server.
+   *
+   * @param maxBatchSize maximum number of entries, at least 1.
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Invalid batch size: "
+          + maxBatchSize);
+    }
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Returns the maximum number of batches sent concurrently.
+   */
+  public int getMaxParallelism() {
+    return maxParallelism;
+  }
+
+  /**
+   * Sets the maximum number of batches sent concurrently.
+   *
+   * @param maxParallelism maximum number of batches, at least 1.
+   */
+  public void setMaxParallelism(int maxParallelism) {
+    if (maxParallelism < 1) {
+      throw new IllegalArgumentException("Invalid parallelism: "
+          + maxParallelism);
+    }
+    this.maxParallelism = maxParallelism;
+  }
+
+  /**
+   * Returns the maximum number of times an entry is resubmitted.
+   */
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Sets the maximum number of times an entry is resubmitted.
+   *
+   * @param maxRetries maximum number of retries, {@code 0} to never
+   *     resubmit entries.
+   */
+  public void setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("Invalid retry count: "
+          + maxRetries);
+    }
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Returns the delay before the first resubmission, in milliseconds.
+   */
+  public long getInitialBackoff() {
+    return initialBackoff;
+  }
+
+  /**
+   * Sets the delay before the first resubmission of an entry.  The delay
+   * doubles with every further resubmission, up to one minute.
+   *
+   * @param initialBackoff delay in milliseconds.
+   */
+  public void setInitialBackoff(long initialBackoff) {
+    if (initialBackoff < 0) {
+      throw new IllegalArgumentException("Invalid backoff: "
+          + initialBackoff);
+    }
+    this.initialBackoff = initialBackoff;
+  }
+
+  /**
+   * Executes a batch feed of any size.
+   * <p>
+   * Entries without a batch id are given one, so that they can be matched
+   * with the response.  The entries of the returned feed are in the order of
+   * the input entries.  An entry that could not be processed after all
+   * retries is returned as submitted, with a {@link BatchStatus} describing
+   * the last failure.
+   *
+   * @param feedUrl the URL of the batch feed.
+   * @param inputFeed the batch feed to execute.
+   * @return a feed holding the response entries of all batches.
+   * @throws IOException error communicating with the GData service, after
+   *     all retries.
+   * @throws ServiceException a batch failed as a whole with a non-retryable
+   *     error, or with a retryable error after all retries.
+   * @see Service#batch(URL, IFeed)
+   */
+  public <F extends BaseFeed<?, E>, E extends BaseEntry<?>> F batch(
+      URL feedUrl, F inputFeed) throws IOException, ServiceException {
+
+    // Index the entries by batch id, assigning ids where missing.
+    Map<String, E> entries = new LinkedHashMap<String, E>();
+    for (E entry : inputFeed.getEntries()) {
+      String id = BatchUtils.getBatchId(entry);
+      if (id == null || entries.containsKey(id)) {
+        id = "b" + entries.size();
+        while (entries.containsKey(id)) {
+          id = "_" + id;
+        }
+        BatchUtils.setBatchId(entry, id);
+      }
+      entries.put(id, entry);
+    }
+
+    // Split the entries into batches.
+    LinkedList<Chunk<F, E>> ready = new LinkedList<Chunk<F, E>>();
+    List<E> chunkEntries = new ArrayList<E>();
+    int batchSize = maxBatchSize;
+    for (E entry : entries.values()) {
+      chunkEntries.add(entry);
+      if (chunkEntries.size() == batchSize) {
+        ready.add(new Chunk<F, E>(chunkEntries, 0));
+        chunkEntries = new ArrayList<E>();
+      }
+    }
+    if (!chunkEntries.isEmpty() || ready.isEmpty()) {
+      ready.add(new Chunk<F, E>(chunkEntries, 0));
+    }
+
+    Map<String, E> results = new LinkedHashMap<String, E>();
+    BlockingQueue<Chunk<F, E>> done = new LinkedBlockingQueue<Chunk<F, E>>();
+    List<Chunk<F, E>> inFlight = new ArrayList<Chunk<F, E>>();
+    F resultFeed = null;
+    BatchOperationType defaultType =
+        BatchUtils.getBatchOperationType(inputFeed);
+    try {
+      while (!ready.isEmpty() || !inFlight.isEmpty()) {
+        while (!ready.isEmpty() && inFlight.size() < maxParallelism) {
+          Chunk<F, E> chunk = ready.removeFirst();
+          send(feedUrl, inputFeed, chunk, done);
+          inFlight.add(chunk);
+        }
+
+        Chunk<F, E> chunk = done.take();
+        inFlight.remove(chunk);
+        F responseFeed = process(chunk, defaultType, ready, results);
+        if (resultFeed == null) {
+          resultFeed = responseFeed;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while executing batch");
+    } finally {
+      for (Chunk<F, E> chunk : inFlight) {
+        chunk.result.cancel(true);
+      }
+    }
+
+    // Merge the responses, in the order of the input entries.
+    resultFeed.removeExtension(BatchInterrupted.class);
+    List<E> resultEntries = resultFeed.getEntries();
+    resultEntries.clear();
+    for (String id : entries.keySet()) {
+      E entry = results.get(id);
+      if (entry != null) {
+        resultEntries.add(entry);
+      }
+    }
+    return resultFeed;
+  }
+
+  /**
+   * Returns {@code true} if an operation or a batch that failed with the
+   * given HTTP status code should be resubmitted.  The default
+   * implementation retries on 429 (too many requests), 502 (bad gateway),
+   * 503 (service unavailable) and 504 (gateway timeout).
+   *
+   * @param code HTTP status code of the failure.
+   */
+  protected boolean isRetryable(int code) {
+    return code == 429 || code == 502 || code == 503 || code == 504;
+  }
+
+  /**
+   * Sends a batch, adding it to the {@code done} queue when it completes.
+   */
+  @SuppressWarnings("unchecked")
+  private <F extends BaseFeed<?, E>, E extends BaseEntry<?>> void send(
+      URL feedUrl, F inputFeed, final Chunk<F, E> chunk,
+      final BlockingQueue<Chunk<F, E>> done) {
+    F feed;
+    try {
+      feed = (F) inputFeed.getClass().newInstance();
+    } catch (InstantiationException e) {
+      throw new IllegalStateException(e);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    BatchOperationType defaultType =
+        BatchUtils.getBatchOperationType(inputFeed);
+    if (defaultType != null) {
+      BatchUtils.setBatchOperationType(feed, defaultType);
+    }
+    feed.getEntries().addAll(chunk.entries);
+
+    long delay = 0;
+    if (chunk.attempt > 0) {
+      delay = Math.min(initialBackoff << Math.min(chunk.attempt - 1, 30),
+          MAX_BACKOFF);
+    }
+    chunk.result = sender.batch(feedUrl, feed, delay);
+    chunk.result.addListener(new Runnable() {
+      public void run() {
+        done.add(chunk);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  /**
+   * Processes a completed batch, recording the final response entries and
+   * queuing the entries to resubmit.
+   *
+   * @return the response feed, or {@code null} if the batch failed as a
+   *     whole and will be resubmitted.
+   */
+  private <F extends BaseFeed<?, E>, E extends BaseEntry<?>> F process(
+      Chunk<F, E> chunk, BatchOperationType defaultType,
+      List<Chunk<F, E>> ready, Map<String, E> results)
+      throws IOException, ServiceException, InterruptedException {
+    boolean canRetry = chunk.attempt < maxRetries;
+    F responseFeed;
+    ServiceException interruption = null;
+    try {
+      responseFeed = chunk.result.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof BatchInterruptedException) {
+        interruption = (BatchInterruptedException) cause;
+        @SuppressWarnings("unchecked")
+        F interruptedFeed =
+            (F) ((BatchInterruptedException) cause).getIFeed();
+        responseFeed = interruptedFeed;
+      } else if (cause instanceof IOException) {
+        if (!canRetry || (isSent((IOException) cause)
+            && !isIdempotent(chunk.entries, defaultType))) {
+          throw (IOException) cause;
+        }
+        ready.add(new Chunk<F, E>(chunk.entries, chunk.attempt + 1));
+        return null;
+      } else if (cause instanceof ServiceException) {
+        ServiceException se = (ServiceException) cause;
+        int code = se.getHttpErrorCodeOverride();
+        if (!canRetry || !isRetryable(code) || (code != 429 && code != 503
+            && !isIdempotent(chunk.entries, defaultType))) {
+          throw se;
+        }
+        ready.add(new Chunk<F, E>(chunk.entries, chunk.attempt + 1));
+        return null;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      } else {
+        throw new ServiceException(cause);
+      }
+    }
+
+    Map<String, E> remaining = new LinkedHashMap<String, E>();
+    for (E entry : chunk.entries) {
+      remaining.put(BatchUtils.getBatchId(entry), entry);
+    }
+    List<E> retries = new ArrayList<E>();
+    for (E entry : responseFeed.getEntries()) {
+      String id = BatchUtils.getBatchId(entry);
+      E inputEntry = id == null ? null : remaining.remove(id);
+      if (inputEntry == null) {
+        continue;
+      }
+      BatchStatus status = BatchUtils.getBatchStatus(entry);
+      if (canRetry && status != null && isRetryable(status.getCode())) {
+        retries.add(inputEntry);
+      } else {
+        results.put(id, entry);
+      }
+    }
+
+    // Entries the server didn't process
+    if (!remaining.isEmpty()) {
+      if (canRetry) {
+        retries.addAll(remaining.values());
+      } else {
+        if (interruption == null) {
+          interruption = new ServiceException(
+              "Batch response has no entry for the operation");
+        }
+        for (Map.Entry<String, E> unprocessed : remaining.entrySet()) {
+          E entry = unprocessed.getValue();
+          entry.setExtension(new BatchStatus(interruption));
+          results.put(unprocessed.getKey(), entry);
+        }
+      }
+    }
+    if (!retries.isEmpty()) {
+      ready.add(new Chunk<F, E>(retries, chunk.attempt + 1));
+    }
+    return responseFeed;
+  }
+
+  /**
+   * Returns {@code false} if a batch request failed with an exception that
+   * shows it never reached the server, so that it cannot have been
+   * processed.
+   */
+  private static boolean isSent(IOException e) {
+    return !(e instanceof ConnectException
+        || e instanceof NoRouteToHostException
+        || e instanceof UnknownHostException);
+  }
+
+  /**
+   * Returns {@code true} if all entries request operations that have the
+   * same effect when repeated, so that a batch whose outcome is unknown can
+   * be resubmitted.  Entries without an operation use the default operation
+   * of the feed, or insert.
+   */
+  private static boolean isIdempotent(List<? extends BaseEntry<?>> entries,
+      BatchOperationType defaultType) {
+    for (BaseEntry<?> entry : entries) {
+      BatchOperationType type = BatchUtils.getBatchOperationType(entry);
+      if (type == null) {
+        type = defaultType;
+      }
+      if (type == null || type == BatchOperationType.INSERT) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A batch of entries and the number of times they have been resubmitted.
+   */
+  private static class Chunk<F, E> {
+
+    private final List<E> entries;
+    private final int attempt;
+    private ListenableFuture<F> result;
+
+    private Chunk(List<E> entries, int attempt) {
+      this.entries = entries;
+      this.attempt = attempt;
+    }
+  }
+
+  /**
+   * Sends batches after an optional delay, carrying over the thread state of
+   * the calling thread.
+   */
+  private static class Sender extends AsyncService {
+
+    private Sender(Service service) {
+      super(service);
+    }
+
+    private Sender(Service service, ExecutorService executor) {
+      super(service, executor);
+    }
+
+    <F extends IFeed> ListenableFuture<F> batch(final URL feedUrl,
+        final F feed, final long delay) {
+      return submit(new Callable<F>() {
+        public F call() throws Exception {
+          if (delay > 0) {
+            Thread.sleep(delay);
+          }
+          return getService().batch(feedUrl, feed);
+        }
+      });
+    }
+  }
+}
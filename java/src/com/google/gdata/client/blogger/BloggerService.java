@@ -140,10 +140,14 @@ public class BloggerService extends GoogleService {
    * Declare the extensions of the feeds for the Blogger service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new BlogCommentFeed().declareExtensions(extProfile);
     new BlogFeed().declareExtensions(extProfile);
     new BlogPostFeed().declareExtensions(extProfile);
     new PostCommentFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
   /**
@@ -138,9 +138,13 @@ public class BooksService extends GoogleService {
    * Declare the extensions of the feeds for the Google Book Search service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new CollectionFeed().declareExtensions(extProfile);
     new VolumeFeed().declareExtensions(extProfile);
     BatchUtils.declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -141,10 +141,14 @@ public class CalendarService extends GoogleService {
    * Declare the extensions of the feeds for the Google Calendar service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new AclFeed().declareExtensions(extProfile);
     new CalendarEventFeed().declareExtensions(extProfile);
     new CalendarFeed().declareExtensions(extProfile);
     BatchUtils.declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 
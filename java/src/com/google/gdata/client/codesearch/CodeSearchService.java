@@ -135,6 +135,10 @@ public class CodeSearchService extends GoogleService {
    * Declare the extensions of the feeds for the Google Code Search service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new CodeSearchFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 }
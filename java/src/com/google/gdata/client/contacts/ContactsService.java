@@ -147,10 +147,14 @@ public class ContactsService extends GoogleService {
    * Declare the extensions of the feeds for the Google Contacts service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new ContactFeed().declareExtensions(extProfile);
     new ContactGroupFeed().declareExtensions(extProfile);
     new ProfileFeed().declareExtensions(extProfile);
     BatchUtils.declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -166,6 +166,9 @@ public class DocsService extends MediaService {
    * Declare the extensions of the feeds for the Google Documents List Data API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new AclFeed().declareExtensions(extProfile);
     new DocumentExportFeed().declareExtensions(extProfile);
     new MetadataFeed().declareExtensions(extProfile);
@@ -182,6 +185,7 @@ public class DocsService extends MediaService {
     new PresentationEntry().declareExtensions(extProfile);
     new SpreadsheetEntry().declareExtensions(extProfile);
     BatchUtils.declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 
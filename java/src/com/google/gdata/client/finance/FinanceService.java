@@ -138,9 +138,13 @@ public class FinanceService extends GoogleService {
    * API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new PortfolioFeed().declareExtensions(extProfile);
     new PositionFeed().declareExtensions(extProfile);
     new TransactionFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
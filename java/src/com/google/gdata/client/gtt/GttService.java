@@ -135,10 +135,14 @@ public class GttService extends MediaService {
    * Declare the extensions of the feeds for the Google Translator Toolkit API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new AclFeed().declareExtensions(extProfile);
     new DocumentFeed().declareExtensions(extProfile);
     new GlossaryFeed().declareExtensions(extProfile);
     new TranslationMemoryFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -135,8 +135,12 @@ public class HealthService extends GoogleService {
    * Declare the extensions of the feeds for the Health service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new ProfileFeed().declareExtensions(extProfile);
     new RegisterFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
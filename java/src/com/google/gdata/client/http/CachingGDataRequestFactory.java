@@ -0,0 +1,572 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.AuthTokenFactory.AuthToken;
+import com.google.gdata.client.GDataProtocol;
+import com.google.gdata.client.Query;
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.client.Service.GDataRequest.RequestType;
+import com.google.gdata.client.Service.GDataRequestFactory;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.data.ParseSource;
+import com.google.gdata.util.ContentType;
+import com.google.gdata.util.NotModifiedException;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.VersionRegistry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link GDataRequestFactory} decorator that caches the responses to
+ * feed and entry queries and revalidates them with entity tags.
+ * <p>
+ * The body of an Atom query response that carries an {@code ETag} header is
+ * kept in the cache, along with its entity headers.  Media and other
+ * non-Atom responses are never cached.  Later queries for the same resource send that entity tag in an
+ * {@code If-None-Match} header, and if the service answers with
+ * {@code 304 Not Modified} the request returns the cached body instead of
+ * throwing a {@link NotModifiedException}.  A cached body is never returned
+ * without asking the service, so callers see the same data as without the
+ * cache; what is saved is transferring and generating unchanged responses.
+ * <p>
+ * Responses are cached per URL, authorization, protocol version and request
+ * headers.  Queries that already carry a precondition (an entity tag or an
+ * If-Modified-Since date) or ask for a byte range are passed through
+ * unchanged.  Authorization
+ * headers that change on every request, such as OAuth 1.0 signatures, make
+ * every query a cache miss.
+ * <p>
+ * The in-memory cache is bounded by the total size of the cached bodies and
+ * evicts the least recently used responses.  An optional disk tier keeps
+ * responses across restarts; it holds response bodies in plain form, so its
+ * directory should only be readable by the application.
+ * <pre>
+ * service.setRequestFactory(new CachingGDataRequestFactory(
+ *     service.getRequestFactory(), 16 * 1024 * 1024));
+ * </pre>
+ *
+ *
+ */
+public class CachingGDataRequestFactory implements GDataRequestFactory {
+
+  /**
+   * Response headers kept with a cached response, besides its entity tag and
+   * content type, and returned in place of the headers of the
+   * {@code 304 Not Modified} response when the cached response is used.
+   */
+  static final List<String> CACHED_HEADERS = Collections.unmodifiableList(
+      Arrays.asList(GDataProtocol.Header.LAST_MODIFIED,
+          GDataProtocol.Header.VERSION, "Content-Language",
+          "Content-Location", "Location"));
+
+  /** A cached response. */
+  static class CachedResponse {
+
+    final String etag;
+    final String contentType;
+    final Map<String, String> headers;
+    final byte[] body;
+
+    CachedResponse(String etag, String contentType,
+        Map<String, String> headers, byte[] body) {
+      this.etag = etag;
+      this.contentType = contentType;
+      this.headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+      this.headers.putAll(headers);
+      this.body = body;
+    }
+  }
+
+  private static final String UTF_8 = "UTF-8";
+
+  private final GDataRequestFactory delegate;
+  private final long maxMemorySize;
+  private final DiskResponseCache diskCache;
+
+  private final Map<String, String> headerMap =
+      new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+  private volatile AuthToken authToken;
+
+  /** In-memory responses by cache key, in access order. */
+  private final LinkedHashMap<String, CachedResponse> responses =
+      new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+  private long memorySize;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * Creates a caching factory that keeps responses in memory.
+   *
+   * @param delegate factory creating the requests sent to the service.
+   * @param maxMemorySize maximum total size of the cached response bodies, in
+   *        bytes.  Larger responses are not cached.
+   */
+  public CachingGDataRequestFactory(GDataRequestFactory delegate,
+      long maxMemorySize) {
+    this.delegate = delegate;
+    this.maxMemorySize = maxMemorySize;
+    this.diskCache = null;
+    initFromDelegate();
+  }
+
+  /**
+   * Creates a caching factory that keeps responses in memory and in a disk
+   * directory.
+   *
+   * @param delegate factory creating the requests sent to the service.
+   * @param maxMemorySize maximum total size of the response bodies cached in
+   *        memory, in bytes.  Larger responses are not cached.
+   * @param directory directory holding the disk tier.
+   * @param maxDiskSize maximum total size of the disk tier, in bytes.
+   * @throws IOException if the directory can't be created.
+   */
+  public CachingGDataRequestFactory(GDataRequestFactory delegate,
+      long maxMemorySize, File directory, long maxDiskSize)
+      throws IOException {
+    this.delegate = delegate;
+    this.maxMemorySize = maxMemorySize;
+    this.diskCache = new DiskResponseCache(directory, maxDiskSize);
+    initFromDelegate();
+  }
+
+  /** Picks up the headers and token already configured on the delegate. */
+  private void initFromDelegate() {
+    if (delegate instanceof HttpGDataRequest.Factory) {
+      HttpGDataRequest.Factory factory = (HttpGDataRequest.Factory) delegate;
+      headerMap.putAll(factory.headerMap);
+      headerMap.putAll(factory.privateHeaderMap);
+      authToken = factory.authToken;
+    }
+  }
+
+  /** Returns the factory creating the requests sent to the service. */
+  public GDataRequestFactory getDelegate() {
+    return delegate;
+  }
+
+  public void setHeader(String header, String value) {
+    delegate.setHeader(header, value);
+    updateHeader(header, value);
+  }
+
+  public void setPrivateHeader(String header, String value) {
+    delegate.setPrivateHeader(header, value);
+    updateHeader(header, value);
+  }
+
+  private void updateHeader(String header, String value) {
+    synchronized (headerMap) {
+      if (value == null) {
+        headerMap.remove(header);
+      } else {
+        headerMap.put(header, value);
+      }
+    }
+  }
+
+  public void setAuthToken(AuthToken authToken) {
+    delegate.setAuthToken(authToken);
+    this.authToken = authToken;
+  }
+
+  public GDataRequest getRequest(RequestType type, URL requestUrl,
+      ContentType contentType) throws IOException, ServiceException {
+    GDataRequest request = delegate.getRequest(type, requestUrl, contentType);
+    return (type == RequestType.QUERY && isAtom(contentType))
+        ? new CachingRequest(request) : request;
+  }
+
+  public GDataRequest getRequest(Query query, ContentType contentType)
+      throws IOException, ServiceException {
+    GDataRequest request = delegate.getRequest(query, contentType);
+    return isAtom(contentType) ? new CachingRequest(request) : request;
+  }
+
+  /**
+   * Returns {@code true} if a content type is Atom, or isn't given.  Requests
+   * for other content types, like media downloads, are not cached.
+   */
+  private static boolean isAtom(ContentType contentType) {
+    return contentType == null
+        || ContentType.ATOM.getMediaType().equals(contentType.getMediaType());
+  }
+
+  /**
+   * Returns the number of queries answered from the cache after the service
+   * confirmed that the cached response is still current.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of cacheable queries that returned a full response. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of responses cached in memory. */
+  public synchronized int getMemoryCount() {
+    return responses.size();
+  }
+
+  /** Returns the total size of the response bodies cached in memory. */
+  public synchronized long getMemorySize() {
+    return memorySize;
+  }
+
+  /** Returns the total size of the disk tier, or zero if there is none. */
+  public long getDiskSize() {
+    return (diskCache != null) ? diskCache.getSize() : 0;
+  }
+
+  /** Removes all responses cached in memory. */
+  public synchronized void clear() {
+    responses.clear();
+    memorySize = 0;
+  }
+
+  private CachedResponse get(String key) {
+    CachedResponse response;
+    synchronized (this) {
+      response = responses.get(key);
+    }
+    if (response == null && diskCache != null) {
+      response = diskCache.get(key);
+      if (response != null) {
+        putInMemory(key, response);
+      }
+    }
+    return response;
+  }
+
+  private void put(String key, CachedResponse response) {
+    putInMemory(key, response);
+    if (diskCache != null) {
+      diskCache.put(key, response);
+    }
+  }
+
+  private synchronized void putInMemory(String key, CachedResponse response) {
+    CachedResponse previous = responses.put(key, response);
+    if (previous != null) {
+      memorySize -= previous.body.length;
+    }
+    memorySize += response.body.length;
+    Iterator<CachedResponse> it = responses.values().iterator();
+    while (memorySize > maxMemorySize && it.hasNext()) {
+      memorySize -= it.next().body.length;
+      it.remove();
+    }
+  }
+
+  private void remove(String key) {
+    synchronized (this) {
+      CachedResponse previous = responses.remove(key);
+      if (previous != null) {
+        memorySize -= previous.body.length;
+      }
+    }
+    if (diskCache != null) {
+      diskCache.remove(key);
+    }
+  }
+
+  /**
+   * Computes the cache key of a request from its URL, authorization, active
+   * protocol versions and headers.  The key is a digest, so that credentials
+   * don't appear in memory dumps or file names.
+   */
+  private String getKey(URL requestUrl, Map<String, String> requestHeaders) {
+    StringBuilder sb = new StringBuilder(requestUrl.toExternalForm());
+    sb.append('\n');
+    AuthToken token = authToken;
+    if (token instanceof HttpAuthToken) {
+      sb.append(((HttpAuthToken) token).getAuthorizationHeader(
+          requestUrl, "GET"));
+    } else if (token != null) {
+      sb.append(token.getClass().getName()).append('@')
+          .append(System.identityHashCode(token));
+    }
+    sb.append('\n');
+    try {
+      VersionRegistry registry = VersionRegistry.get();
+      sb.append(registry.getDefaultVersions()).append(' ')
+          .append(registry.getThreadVersions());
+    } catch (IllegalStateException e) {
+      // No versions configured.
+    }
+    Map<String, String> headers;
+    synchronized (headerMap) {
+      headers = new TreeMap<String, String>(headerMap);
+    }
+    headers.putAll(requestHeaders);
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      sb.append('\n').append(header.getKey()).append(": ")
+          .append(header.getValue());
+    }
+
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+          sb.toString().getBytes(UTF_8));
+      StringBuilder key = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        key.append(Character.forDigit((b >> 4) & 0xf, 16));
+        key.append(Character.forDigit(b & 0xf, 16));
+      }
+      return key.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not supported", e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 not supported", e);
+    }
+  }
+
+  /**
+   * A query request that sends the entity tag of a cached response and
+   * returns the cached response if the service reports it as not modified.
+   */
+  public class CachingRequest implements GDataRequest {
+
+    private final GDataRequest request;
+    private final Map<String, String> requestHeaders =
+        new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+    private boolean conditional;
+
+    /** The cached or newly buffered response, if any. */
+    private CachedResponse response;
+
+    /** Response stream returned to the caller. */
+    private InputStream responseStream;
+
+    private CachingRequest(GDataRequest request) {
+      this.request = request;
+    }
+
+    /** Returns the request sent to the service. */
+    public GDataRequest getDelegate() {
+      return request;
+    }
+
+    public void setConnectTimeout(int timeout) {
+      request.setConnectTimeout(timeout);
+    }
+
+    public void setReadTimeout(int timeout) {
+      request.setReadTimeout(timeout);
+    }
+
+    public void setEtag(String etag) {
+      if (etag != null) {
+        conditional = true;
+      }
+      request.setEtag(etag);
+    }
+
+    public void setIfModifiedSince(DateTime conditionDate) {
+      if (conditionDate != null) {
+        conditional = true;
+      }
+      request.setIfModifiedSince(conditionDate);
+    }
+
+    public void setHeader(String name, String value) {
+      requestHeaders.put(name, value);
+      request.setHeader(name, value);
+    }
+
+    public void setPrivateHeader(String name, String value) {
+      requestHeaders.put(name, value);
+      request.setPrivateHeader(name, value);
+    }
+
+    public URL getRequestUrl() {
+      return request.getRequestUrl();
+    }
+
+    public OutputStream getRequestStream() throws IOException {
+      return request.getRequestStream();
+    }
+
+    public ContentType getRequestContentType() {
+      return request.getRequestContentType();
+    }
+
+    public void execute() throws IOException, ServiceException {
+
+      if (conditional
+          || requestHeaders.containsKey(GDataProtocol.Header.RANGE)
+          || requestHeaders.containsKey(GDataProtocol.Header.IF_RANGE)) {
+        request.execute();
+        return;
+      }
+
+      String key = getKey(request.getRequestUrl(), requestHeaders);
+      CachedResponse cached = get(key);
+      if (cached != null) {
+        request.setEtag(cached.etag);
+      }
+
+      try {
+        request.execute();
+      } catch (NotModifiedException e) {
+        if (cached == null) {
+          throw e;
+        }
+        hitCount.incrementAndGet();
+        response = cached;
+        return;
+      }
+
+      missCount.incrementAndGet();
+      String etag = request.getResponseHeader(GDataProtocol.Header.ETAG);
+      String cacheControl = request.getResponseHeader("Cache-Control");
+      ContentType contentType = request.getResponseContentType();
+      if (etag == null
+          || (cacheControl != null && cacheControl.contains("no-store"))
+          || contentType == null || !isAtom(contentType)) {
+        if (cached != null) {
+          remove(key);
+        }
+        return;
+      }
+
+      // Buffer the response, unless it turns out to be too large to cache.
+      InputStream in = request.getResponseStream();
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      byte[] chunk = new byte[8192];
+      int count;
+      while ((count = in.read(chunk)) != -1) {
+        buf.write(chunk, 0, count);
+        if (buf.size() > maxMemorySize) {
+          responseStream = new SequenceInputStream(
+              new ByteArrayInputStream(buf.toByteArray()), in);
+          if (cached != null) {
+            remove(key);
+          }
+          return;
+        }
+      }
+
+      Map<String, String> headers = new TreeMap<String, String>();
+      for (String name : CACHED_HEADERS) {
+        String value = request.getResponseHeader(name);
+        if (value != null) {
+          headers.put(name, value);
+        }
+      }
+      response = new CachedResponse(etag, contentType.toString(), headers,
+          buf.toByteArray());
+      put(key, response);
+    }
+
+    public ContentType getResponseContentType()
+        throws IOException, ServiceException {
+      if (response != null) {
+        return (response.contentType != null)
+            ? new ContentType(response.contentType) : null;
+      }
+      return request.getResponseContentType();
+    }
+
+    public InputStream getResponseStream() throws IOException {
+      if (responseStream == null) {
+        if (response != null) {
+          responseStream = new ByteArrayInputStream(response.body);
+        } else {
+          return request.getResponseStream();
+        }
+      }
+      return responseStream;
+    }
+
+    /**
+     * Returns a response header.  When the cached response is used, its
+     * entity headers are returned rather than those of the
+     * {@code 304 Not Modified} response.
+     */
+    public String getResponseHeader(String headerName) {
+      if (response != null) {
+        if ("Content-Type".equalsIgnoreCase(headerName)) {
+          return response.contentType;
+        }
+        if (GDataProtocol.Header.ETAG.equalsIgnoreCase(headerName)) {
+          return response.etag;
+        }
+        if (isCachedHeader(headerName)) {
+          return response.headers.get(headerName);
+        }
+      }
+      return request.getResponseHeader(headerName);
+    }
+
+    public DateTime getResponseDateHeader(String headerName) {
+      if (response != null && isCachedHeader(headerName)) {
+        String value = response.headers.get(headerName);
+        if (value == null) {
+          return null;
+        }
+        try {
+          return DateTime.parseRfc822(value);
+        } catch (ParseException e) {
+          return null;
+        }
+      }
+      return request.getResponseDateHeader(headerName);
+    }
+
+    private boolean isCachedHeader(String headerName) {
+      for (String name : CACHED_HEADERS) {
+        if (name.equalsIgnoreCase(headerName)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public ParseSource getParseSource() throws IOException, ServiceException {
+      if (response != null || responseStream != null) {
+        return new ParseSource(getResponseStream());
+      }
+      return request.getParseSource();
+    }
+
+    public void end() {
+      request.end();
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.http.CachingGDataRequestFactory.CachedResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The second, disk based tier of {@link CachingGDataRequestFactory}.  Each
+ * response is stored in its own file, named after its cache key.  When the
+ * directory grows beyond its size limit, the least recently used files are
+ * deleted.
+ * <p>
+ * Errors reading or writing the cache are logged and treated as cache
+ * misses.
+ *
+ *
+ */
+class DiskResponseCache {
+
+  private static final Logger logger =
+      Logger.getLogger(DiskResponseCache.class.getName());
+
+  /** Marks the format of cache files. */
+  private static final int FILE_MAGIC = 0x47444332;
+
+  /** Suffix of cache files. */
+  private static final String SUFFIX = ".cache";
+
+  private final File directory;
+  private final long maxSize;
+  private final AtomicLong size = new AtomicLong();
+
+  /**
+   * Creates a disk cache in a directory, which is created if it doesn't exist.
+   * Responses previously stored in the directory are reused.
+   *
+   * @param directory directory holding the cache files.
+   * @param maxSize maximum total size of the cache files, in bytes.
+   * @throws IOException if the directory can't be created.
+   */
+  DiskResponseCache(File directory, long maxSize) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Unable to create cache directory " + directory);
+    }
+    this.directory = directory;
+    this.maxSize = maxSize;
+    for (File file : listFiles()) {
+      size.addAndGet(file.length());
+    }
+  }
+
+  /** Returns the response stored for a key or {@code null} if none. */
+  CachedResponse get(String key) {
+    File file = getFile(key);
+    try {
+      DataInputStream in = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != FILE_MAGIC) {
+          throw new IOException("Invalid cache file " + file);
+        }
+        String etag = in.readUTF();
+        String contentType = in.readUTF();
+        Map<String, String> headers = new TreeMap<String, String>();
+        for (int count = in.readInt(); count > 0; count--) {
+          String name = in.readUTF();
+          headers.put(name, in.readUTF());
+        }
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        file.setLastModified(System.currentTimeMillis());
+        return new CachedResponse(etag,
+            contentType.length() == 0 ? null : contentType, headers, body);
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error reading cache file " + file, e);
+      remove(key);
+      return null;
+    }
+  }
+
+  /** Stores the response for a key, replacing any previous response. */
+  void put(String key, CachedResponse response) {
+    File file = getFile(key);
+    File tmpFile = null;
+    try {
+      tmpFile = File.createTempFile(key, ".tmp", directory);
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        out.writeInt(FILE_MAGIC);
+        out.writeUTF(response.etag);
+        out.writeUTF(response.contentType == null ? "" : response.contentType);
+        out.writeInt(response.headers.size());
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+          out.writeUTF(header.getKey());
+          out.writeUTF(header.getValue());
+        }
+        out.writeInt(response.body.length);
+        out.write(response.body);
+      } finally {
+        out.close();
+      }
+      long oldLength = file.length();
+      if (!tmpFile.renameTo(file)) {
+        file.delete();
+        if (!tmpFile.renameTo(file)) {
+          throw new IOException("Unable to rename " + tmpFile);
+        }
+      }
+      size.addAndGet(file.length() - oldLength);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Error writing cache file " + file, e);
+      if (tmpFile != null) {
+        tmpFile.delete();
+      }
+      return;
+    }
+    if (size.get() > maxSize) {
+      trim();
+    }
+  }
+
+  /** Removes the response stored for a key. */
+  void remove(String key) {
+    File file = getFile(key);
+    long length = file.length();
+    if (file.delete()) {
+      size.addAndGet(-length);
+    }
+  }
+
+  /** Returns the total size of the cache files, in bytes. */
+  long getSize() {
+    return size.get();
+  }
+
+  /** Deletes the least recently used files until the cache fits its limit. */
+  private synchronized void trim() {
+    File[] files = listFiles();
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File f1, File f2) {
+        long m1 = f1.lastModified();
+        long m2 = f2.lastModified();
+        return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+      }
+    });
+    for (int i = 0; i < files.length && size.get() > maxSize; i++) {
+      long length = files[i].length();
+      if (files[i].delete()) {
+        size.addAndGet(-length);
+      }
+    }
+  }
+
+  private File[] listFiles() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return new File[0];
+    }
+    int count = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(SUFFIX)) {
+        files[count++] = file;
+      }
+    }
+    return Arrays.copyOf(files, count);
+  }
+
+  private File getFile(String key) {
+    return new File(directory, key + SUFFIX);
+  }
+}
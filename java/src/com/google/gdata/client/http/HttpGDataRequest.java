@@ -41,10 +41,14 @@ import com.google.gdata.util.PreconditionFailedException;
 import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.ServiceForbiddenException;
+import com.google.gdata.util.ServiceUnavailableException;
 import com.google.gdata.util.VersionConflictException;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -58,7 +62,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * The HttpGDataRequest class provides a basic implementation of the
@@ -95,6 +98,24 @@ public class HttpGDataRequest implements GDataRequest {
       GDataProtocol.Header.METHOD_OVERRIDE;
 
 
+  /**
+   * Maximum number of redirects followed for a single request, matching the
+   * default {@code http.maxRedirects} limit of {@link HttpURLConnection}.
+   */
+  private static final int MAX_REDIRECTS = 20;
+
+  /**
+   * Default size of request data, in bytes, above which it is streamed to the
+   * connection instead of buffered.
+   */
+  public static final int DEFAULT_STREAMING_THRESHOLD = 1024 * 1024;
+
+  /**
+   * Size of the chunks request data is streamed in.
+   */
+  private static final int STREAMING_CHUNK_SIZE = 64 * 1024;
+
+
   /**
    * The HttpGDataRequest.Factory class is a factory class for constructing
    * new HttpGDataRequest instances.
@@ -109,6 +130,8 @@ public class HttpGDataRequest implements GDataRequest {
     protected boolean useSsl = false;
     protected HttpUrlConnectionSource connectionSource =
         JdkHttpUrlConnectionSource.INSTANCE;
+    protected int compressionThreshold = -1;
+    protected int streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
 
     public void setAuthToken(AuthTokenFactory.AuthToken authToken) {
       if (authToken != null && !(authToken instanceof HttpAuthToken)) {
@@ -153,6 +176,30 @@ public class HttpGDataRequest implements GDataRequest {
       this.connectionSource = connectionSource;
     }
 
+    /**
+     * Enables gzip compression of XML and JSON request data of at least the
+     * given size, in bytes.  Such request data is buffered until the request
+     * is executed.  A negative value disables compression, which is the
+     * default.  Only enable compression for services that accept gzip encoded
+     * request data.
+     */
+    public void setRequestCompressionThreshold(int threshold) {
+      this.compressionThreshold = threshold;
+    }
+
+    /**
+     * Sets the size of request data, in bytes, above which it is streamed to
+     * the connection in chunks instead of buffered.  Streamed requests are
+     * not redirected or retried.  A negative value always buffers request
+     * data.  The default is
+     * {@link HttpGDataRequest#DEFAULT_STREAMING_THRESHOLD}.
+     *
+     * @see HttpGDataRequest#setRequestStreamingThreshold(int)
+     */
+    public void setRequestStreamingThreshold(int threshold) {
+      this.streamingThreshold = threshold;
+    }
+
     @SuppressWarnings("unused")
     public GDataRequest getRequest(RequestType type,
                                    URL requestUrl,
@@ -162,7 +209,15 @@ public class HttpGDataRequest implements GDataRequest {
         requestUrl = new URL(
             requestUrl.toString().replaceFirst("http", "https"));
       }
-      return createRequest(type, requestUrl, contentType);
+      GDataRequest request = createRequest(type, requestUrl, contentType);
+      if (request instanceof HttpGDataRequest) {
+        HttpGDataRequest httpRequest = (HttpGDataRequest) request;
+        if (compressionThreshold >= 0) {
+          httpRequest.setRequestCompressionThreshold(compressionThreshold);
+        }
+        httpRequest.setRequestStreamingThreshold(streamingThreshold);
+      }
+      return request;
     }
 
     @SuppressWarnings("unused")
@@ -255,6 +310,71 @@ public class HttpGDataRequest implements GDataRequest {
    */
   private InputStream inputStream = null;
 
+  /**
+   * The output stream to which request data is written or {@code null} if not
+   * opened yet via {@link #getRequestStream()}.
+   */
+  private OutputStream requestStream = null;
+
+  /**
+   * Minimum size of request data that is gzip compressed, or -1 if request
+   * data is never compressed.
+   */
+  private int compressionThreshold = -1;
+
+  /**
+   * Size of request data above which it is streamed instead of buffered, or
+   * -1 if request data is always buffered.
+   */
+  private int streamingThreshold = DEFAULT_STREAMING_THRESHOLD;
+
+  /**
+   * Whether a streaming mode was set through this request, in which case
+   * request data is written directly to the connection.
+   */
+  private boolean streamingModeSet = false;
+
+  /**
+   * Buffers request data until the request is executed, or until it is
+   * streamed.
+   */
+  private RequestBuffer bufferedRequest = null;
+
+  /**
+   * Request data sent with a fixed length, kept so that the request can be
+   * resent, or {@code null}.
+   */
+  private ByteArrayOutputStream requestData = null;
+
+  /**
+   * The headers set on this request, kept so they can be resent if the request
+   * is redirected.
+   */
+  private final Map<String, String> requestHeaders =
+      new LinkedHashMap<String, String>();
+
+  /**
+   * Policy for retrying the request after a transient error, or {@code null}
+   * if the request is never retried.
+   */
+  private RetryPolicy retryPolicy = null;
+
+  /**
+   * Number of times the request has been retried.
+   */
+  private int retryCount = 0;
+
+  /**
+   * Delay before the previous retry, in milliseconds.
+   */
+  private long retryDelay = 0;
+
+  /**
+   * Whether redirects are followed by {@link #execute()} rather than by
+   * {@link HttpURLConnection}.
+   */
+  private boolean manualRedirects;
+
   /**
    * Constructs a new HttpGDataRequest instance of the specified RequestType,
    * targeting the specified URL.
@@ -451,21 +571,258 @@ public class HttpGDataRequest implements GDataRequest {
     }
   }
 
+  /**
+   * Sets the minimum size of XML or JSON request data that is gzip
+   * compressed, or -1 to never compress request data.  Must be called before
+   * {@link #getRequestStream()}.
+   */
+  public void setRequestCompressionThreshold(int threshold) {
+    compressionThreshold = threshold;
+  }
+
+  /**
+   * Sets the size of request data, in bytes, above which it is streamed to
+   * the connection in chunks as it is written, instead of buffered and sent
+   * with a {@code Content-Length} when the request is executed.  Streamed
+   * requests use less memory, but can't be resent: a redirect response to a
+   * streamed insert or update, or a transient error that would otherwise be
+   * retried, is handled as an error response instead.  A negative value
+   * always buffers request data.  Must be called before
+   * {@link #getRequestStream()}.
+   */
+  public void setRequestStreamingThreshold(int threshold) {
+    streamingThreshold = threshold;
+  }
+
+  /**
+   * Streams request data to the connection in chunks of the given size as it
+   * is written, rather than buffering it.  Must be called before
+   * {@link #getRequestStream()}.
+   *
+   * @see HttpURLConnection#setChunkedStreamingMode(int)
+   */
+  public void setChunkedStreamingMode(int chunkSize) {
+    httpConn.setChunkedStreamingMode(chunkSize);
+    streamingModeSet = true;
+  }
+
+  /**
+   * Streams request data of the given length to the connection as it is
+   * written, rather than buffering it.  Must be called before
+   * {@link #getRequestStream()}.
+   *
+   * @see HttpURLConnection#setFixedLengthStreamingMode(int)
+   */
+  public void setFixedLengthStreamingMode(int contentLength) {
+    httpConn.setFixedLengthStreamingMode(contentLength);
+    streamingModeSet = true;
+  }
+
+  /**
+   * Sets the policy for retrying the request when it fails with a transient
+   * error, or {@code null} to never retry it.  Request data can only be resent
+   * if it was buffered, which is the case unless a streaming mode was set or
+   * the data exceeded the streaming threshold.
+   *
+   * @see #setRequestStreamingThreshold(int)
+   */
+  public void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Returns the number of times the request has been retried.
+   */
+  public int getRetryCount() {
+    return retryCount;
+  }
+
   public OutputStream getRequestStream() throws IOException {
 
     if (!expectsInput) {
       throw new IllegalStateException("Request doesn't accept input");
     }
+    OutputStream stream;
+    if (streamingModeSet) {
+      requestStream = httpConn.getOutputStream();
+      stream = requestStream;
+    } else {
+      if (bufferedRequest == null) {
+        bufferedRequest = new RequestBuffer(
+            compressionThreshold >= 0 && isCompressible(inputType));
+      }
+      stream = bufferedRequest;
+    }
     if (logger.isLoggable(Level.FINEST)){
-      return new LoggableOutputStream(logger, httpConn.getOutputStream());
+      return new LoggableOutputStream(logger, stream);
+    }
+    return stream;
+  }
+
+  /** Returns whether request data of a content type is worth compressing. */
+  private static boolean isCompressible(ContentType contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    String subType = contentType.getSubType();
+    return "text".equals(contentType.getType())
+        || (subType != null
+            && (subType.endsWith("xml") || subType.endsWith("json")));
+  }
+
+  /**
+   * Completes sending the request data written to the request buffer:
+   * buffered data is sent with a fixed length, gzip compressed if it is at
+   * least as large as the compression threshold, and streamed data is
+   * finished.
+   */
+  private void writeBufferedRequest() throws IOException {
+    if (bufferedRequest == null) {
+      return;
+    }
+    RequestBuffer request = bufferedRequest;
+    bufferedRequest = null;
+    if (request.out != null) {
+      request.finish();
+      return;
+    }
+
+    ByteArrayOutputStream data = request.buffer;
+    if (request.compress && data.size() >= compressionThreshold) {
+      setHeader("Content-Encoding", "gzip");
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+      OutputStream gzipStream = new PooledGZIPOutputStream(compressed);
+      data.writeTo(gzipStream);
+      gzipStream.close();
+      data = compressed;
+    }
+    requestData = data;
+    writeRequestData(httpConn);
+  }
+
+  /**
+   * Writes the request data to a connection with a fixed length.
+   */
+  private void writeRequestData(HttpURLConnection connection)
+      throws IOException {
+    try {
+      connection.setFixedLengthStreamingMode(requestData.size());
+    } catch (IllegalStateException e) {
+      // A chunked streaming mode was set on the connection directly.
+    }
+    requestStream = connection.getOutputStream();
+    requestData.writeTo(requestStream);
+  }
+
+  /**
+   * Buffers request data until the request is executed, when it is sent with
+   * a fixed length.  Once the data exceeds the streaming threshold, the
+   * buffered data and any further data are streamed to the connection in
+   * chunks instead, gzip compressed if compression is enabled for the data.
+   */
+  private class RequestBuffer extends OutputStream {
+
+    /** Whether compression is enabled for the request data. */
+    final boolean compress;
+
+    /** Buffered request data, until the data is streamed. */
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    /** The stream data is written to once it is streamed, or {@code null}. */
+    OutputStream out = null;
+
+    RequestBuffer(boolean compress) {
+      this.compress = compress;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (out == null && exceedsThreshold(1)) {
+        startStreaming();
+      }
+      if (out != null) {
+        out.write(b);
+      } else {
+        buffer.write(b);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (out == null && exceedsThreshold(len)) {
+        startStreaming();
+      }
+      if (out != null) {
+        out.write(b, off, len);
+      } else {
+        buffer.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (out != null) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() {
+      // Request data is sent when the request is executed.
+    }
+
+    /**
+     * Returns whether writing more data would exceed the streaming threshold.
+     * Data that may be compressed is only streamed once it is also large
+     * enough to be compressed.
+     */
+    private boolean exceedsThreshold(int len) {
+      if (streamingThreshold < 0) {
+        return false;
+      }
+      int threshold = compress
+          ? Math.max(streamingThreshold, compressionThreshold)
+          : streamingThreshold;
+      return buffer.size() + len > threshold;
+    }
+
+    /**
+     * Starts streaming request data to the connection, beginning with the
+     * buffered data.
+     */
+    private void startStreaming() throws IOException {
+      try {
+        httpConn.setChunkedStreamingMode(STREAMING_CHUNK_SIZE);
+      } catch (IllegalStateException e) {
+        // A fixed length streaming mode was set on the connection directly.
+      }
+      if (compress) {
+        setHeader("Content-Encoding", "gzip");
+      }
+      requestStream = httpConn.getOutputStream();
+      out = compress ? new PooledGZIPOutputStream(requestStream)
+          : requestStream;
+      buffer.writeTo(out);
+      buffer = null;
+    }
+
+    /**
+     * Finishes streaming request data.
+     */
+    void finish() throws IOException {
+      if (out != requestStream) {
+        out.close();
+      } else {
+        out.flush();
+      }
     }
-    return httpConn.getOutputStream();
   }
 
 
   public XmlWriter getRequestWriter() throws IOException {
     OutputStream requestStream = getRequestStream();
-    Writer writer = new OutputStreamWriter(requestStream, "utf-8");
+    Writer writer =
+        new BufferedWriter(new OutputStreamWriter(requestStream, "utf-8"));
     return new XmlWriter(writer);
   }
 
@@ -478,76 +835,279 @@ public class HttpGDataRequest implements GDataRequest {
 
   public void setHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    requestHeaders.put(name, value);
     logger.finer(name + ": " + value);
   }
 
 
   public void setPrivateHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    requestHeaders.put(name, value);
     logger.finer(name + ": <Not Logged>");
   }
 
   public void execute() throws IOException, ServiceException {
 
-    if (connectTimeout >= 0) {
-      httpConn.setConnectTimeout(connectTimeout);
+    applyTimeouts(httpConn);
+    writeBufferedRequest();
+
+    // Redirects of requests other than queries are followed here rather than
+    // by HttpURLConnection, which would turn a redirected POST into a GET
+    // unless the JVM-wide http.strictPostRedirect property is set.
+    // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4023866
+    manualRedirects = type != RequestType.QUERY
+        && httpConn.getInstanceFollowRedirects();
+    if (manualRedirects) {
+      httpConn.setInstanceFollowRedirects(false);
     }
+    httpConn.connect();
+    followRedirects();
 
-    if (readTimeout >= 0) {
-      httpConn.setReadTimeout(readTimeout);
+    if (retryPolicy != null) {
+      retryTransientErrors();
     }
 
-    // Set the http.strictPostRedirect property to prevent redirected
-    // POST/PUT/DELETE from being mapped to a GET. This
-    // system property was a hack to fix a jdk bug w/out changing back
-    // compat behavior. It's bogus that this is a system (and not a
-    // per-connection) property, so we just change it for the duration
-    // of the connection.
-    // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4023866
-    String httpStrictPostRedirect =
-        System.getProperty("http.strictPostRedirect");
-    try {
-      System.setProperty("http.strictPostRedirect", "true");
-      httpConn.connect();
-
-      if (logger.isLoggable(Level.FINE)) {
-
-        // Avoid calling URL.equals() unless an object equivalence test fails,
-        // because URL.equals() requires DNS resolution. This test will
-        // fail on the first check for any URLConnection implementation
-        // that derives from java.net.URLConnection. The 2nd check would
-        // work on an alternate impl that clones the URL.
-        if (httpConn.getURL() != requestUrl
-            && !httpConn.getURL().toExternalForm().equals(
-                requestUrl.toExternalForm())) {
-          logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
-        }
+    if (logger.isLoggable(Level.FINE)) {
+
+      // Avoid calling URL.equals() unless an object equivalence test fails,
+      // because URL.equals() requires DNS resolution. This test will
+      // fail on the first check for any URLConnection implementation
+      // that derives from java.net.URLConnection. The 2nd check would
+      // work on an alternate impl that clones the URL.
+      if (httpConn.getURL() != requestUrl
+          && !httpConn.getURL().toExternalForm().equals(
+              requestUrl.toExternalForm())) {
+        logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
+      }
 
-        // Log response information here, if enabled
-        logger.fine(httpConn.getResponseCode() + " "
-            + httpConn.getResponseMessage());
-        if (logger.isLoggable(Level.FINER)) {
-          for (Map.Entry<String, List<String>> headerField : httpConn
-              .getHeaderFields().entrySet()) {
-            for (String value : headerField.getValue()) {
-              logger.finer(headerField.getKey() + ": " + value);
-            }
+      // Log response information here, if enabled
+      logger.fine(httpConn.getResponseCode() + " "
+          + httpConn.getResponseMessage());
+      if (logger.isLoggable(Level.FINER)) {
+        for (Map.Entry<String, List<String>> headerField : httpConn
+            .getHeaderFields().entrySet()) {
+          for (String value : headerField.getValue()) {
+            logger.finer(headerField.getKey() + ": " + value);
           }
         }
       }
-      checkResponse(); // will flush any request data
-
-    } finally {
-      if (httpStrictPostRedirect == null) {
-        System.clearProperty("http.strictPostRedirect");
-      } else {
-        System.setProperty("http.strictPostRedirect", httpStrictPostRedirect);
+    }
+    while (true) {
+      try {
+        checkResponse(); // will flush any request data
+        break;
+      } catch (ServiceException e) {
+        if (!retryRateLimitError(e)) {
+          throw e;
+        }
       }
     }
 
     executed = true;
   }
 
+  /**
+   * Applies the configured timeouts to a connection.
+   */
+  private void applyTimeouts(HttpURLConnection connection) {
+    if (connectTimeout >= 0) {
+      connection.setConnectTimeout(connectTimeout);
+    }
+
+    if (readTimeout >= 0) {
+      connection.setReadTimeout(readTimeout);
+    }
+  }
+
+  /**
+   * Follows redirect responses of requests whose redirects are not followed
+   * by {@link HttpURLConnection}.
+   */
+  private void followRedirects() throws IOException {
+    if (!manualRedirects) {
+      return;
+    }
+    int redirects = 0;
+    while (isRedirect(httpConn.getResponseCode()) && followRedirect()) {
+      if (++redirects > MAX_REDIRECTS) {
+        throw new ProtocolException(
+            "Server redirected too many times (" + MAX_REDIRECTS + ")");
+      }
+    }
+  }
+
+  /**
+   * Resends the request while it fails with an error that the retry policy
+   * allows to retry, waiting for the delay chosen by the policy before each
+   * retry.
+   */
+  private void retryTransientErrors() throws IOException {
+    while (httpConn.getResponseCode() >= 400 && canResend()) {
+      URL url = httpConn.getURL();
+      long delay = retryPolicy.getRetryDelay(type, url.getHost(), retryCount,
+          retryDelay, httpConn.getResponseCode(),
+          httpConn.getHeaderField("Retry-After"));
+      if (delay == RetryPolicy.STOP) {
+        return;
+      }
+      retry(url, delay);
+    }
+  }
+
+  /**
+   * Resends the request if it failed with a rate limit error that the retry
+   * policy allows to retry.  Rate limit errors are 403 responses, which can
+   * only be told apart from other 403 responses by the parsed error.
+   *
+   * @return {@code true} if the request was resent.
+   */
+  private boolean retryRateLimitError(ServiceException error)
+      throws IOException {
+    if (retryPolicy == null
+        || httpConn.getResponseCode() != HttpURLConnection.HTTP_FORBIDDEN
+        || !canResend()) {
+      return false;
+    }
+    URL url = httpConn.getURL();
+    long delay = retryPolicy.getRetryDelay(type, url.getHost(), retryCount,
+        retryDelay, error, httpConn.getHeaderField("Retry-After"));
+    if (delay == RetryPolicy.STOP) {
+      return false;
+    }
+    retry(url, delay);
+    retryTransientErrors();
+    return true;
+  }
+
+  /**
+   * Discards the failed response, so that its connection is available to
+   * other requests in the meantime, waits for the given delay, and resends
+   * the request.
+   */
+  private void retry(URL url, long delay) throws IOException {
+    logger.fine("Retrying request after " + httpConn.getResponseCode()
+        + " response in " + delay + " ms");
+    discardResponse();
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted before retry");
+    }
+    retryDelay = delay;
+    retryCount++;
+    resend(url);
+    followRedirects();
+  }
+
+  /**
+   * Returns {@code true} if the response code is one that
+   * {@link HttpURLConnection} treats as a redirect.
+   */
+  private static boolean isRedirect(int responseCode) {
+    return responseCode >= 300 && responseCode <= 307
+        && responseCode != HttpURLConnection.HTTP_NOT_MODIFIED
+        && responseCode != 306;
+  }
+
+  /**
+   * Resends the request to the location given by the current redirect
+   * response, keeping the request method, headers, and data.  Like
+   * {@link HttpURLConnection}, redirects that change the protocol are not
+   * followed.
+   *
+   * @return {@code true} if the request was resent, {@code false} if the
+   *         redirect cannot be followed and should be handled as a response.
+   */
+  private boolean followRedirect() throws IOException {
+
+    String location = httpConn.getHeaderField("Location");
+    if (location == null) {
+      return false;
+    }
+    URL target = new URL(httpConn.getURL(), location);
+    if (!target.getProtocol().equalsIgnoreCase(
+        httpConn.getURL().getProtocol())) {
+      return false;
+    }
+
+    if (!canResend()) {
+      return false;
+    }
+    discardResponse();
+    resend(target);
+    return true;
+  }
+
+  /**
+   * Returns {@code true} if the request data, if any, can be resent.
+   */
+  private boolean canResend() {
+    // Request data can only be resent if it was buffered and sent with a
+    // fixed length, rather than streamed.
+    return requestStream == null || requestData != null;
+  }
+
+  /**
+   * Consumes the current response and gives its connection back, so that a
+   * pooled source at its per-host limit does not block other requests, or
+   * the resent request, waiting on the connection held by this request.
+   */
+  private void discardResponse() {
+    try {
+      InputStream errorStream = httpConn.getErrorStream();
+      if (errorStream == null) {
+        httpConn.getInputStream().close();
+      } else if (!(connectionSource
+          instanceof ReleasableHttpUrlConnectionSource)) {
+        // Releasable sources drain the error stream themselves.
+        errorStream.close();
+      }
+    } catch (IOException e) {
+      httpConn.disconnect();
+    }
+    releaseConnection();
+  }
+
+  /**
+   * Resends the request to a URL, keeping the request method, headers, data
+   * and redirect handling.  The current response must have been discarded.
+   */
+  private void resend(URL target) throws IOException {
+    String method = httpConn.getRequestMethod();
+    HttpURLConnection newConn = getRequestConnection(target);
+    newConn.setInstanceFollowRedirects(httpConn.getInstanceFollowRedirects());
+    newConn.setRequestMethod(method);
+    applyTimeouts(newConn);
+    for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+      newConn.setRequestProperty(header.getKey(), header.getValue());
+    }
+    if (authToken != null) {
+      newConn.setRequestProperty("Authorization",
+          authToken.getAuthorizationHeader(target, method));
+    }
+    newConn.setDoOutput(expectsInput);
+
+    if (requestData != null) {
+      writeRequestData(newConn);
+    }
+
+    httpConn = newConn;
+    httpConn.connect();
+  }
+
+  /**
+   * Returns the current connection to its source, if the source tracks the
+   * connections it creates.
+   */
+  private void releaseConnection() {
+    if (httpConn != null
+        && connectionSource instanceof ReleasableHttpUrlConnectionSource) {
+      ((ReleasableHttpUrlConnectionSource) connectionSource)
+          .releaseConnection(httpConn);
+    }
+  }
+
   /**
    * Called after a request is executed to process the response and generate an
    * appropriate exception (on failure).
@@ -628,6 +1188,16 @@ public class HttpGDataRequest implements GDataRequest {
       case HttpURLConnection.HTTP_GONE:
         throw new NoLongerAvailableException(httpConn);
 
+      case HttpURLConnection.HTTP_UNAVAILABLE:
+        ServiceUnavailableException e =
+            new ServiceUnavailableException(httpConn);
+        long retryAfter = RetryPolicy.parseRetryAfter(
+            httpConn.getHeaderField("Retry-After"), System.currentTimeMillis());
+        if (retryAfter >= 0) {
+          e.setRetryTime((int) Math.min(retryAfter / 1000, Integer.MAX_VALUE));
+        }
+        throw e;
+
       default:
         throw new ServiceException(httpConn);
     }
@@ -672,7 +1242,7 @@ public class HttpGDataRequest implements GDataRequest {
 
     inputStream = httpConn.getInputStream();
     if ("gzip".equalsIgnoreCase(httpConn.getContentEncoding())) {
-      inputStream = new GZIPInputStream(inputStream);
+      inputStream = new PooledGZIPInputStream(inputStream);
     }
     if (logger.isLoggable(Level.FINEST)){
       return new LoggableInputStream(logger, inputStream);
@@ -701,6 +1271,8 @@ public class HttpGDataRequest implements GDataRequest {
       }
     } catch (IOException ioe) {
       logger.log(Level.WARNING, "Error closing response stream", ioe);
+    } finally {
+      releaseConnection();
     }
   }
 }
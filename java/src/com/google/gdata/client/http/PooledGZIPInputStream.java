@@ -0,0 +1,198 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads gzip encoded data like {@link java.util.zip.GZIPInputStream}, using
+ * an inflater from {@link ZlibPool} that is returned to the pool when the
+ * stream is closed.  Concatenated gzip members are read as one stream.
+ *
+ *
+ */
+class PooledGZIPInputStream extends InflaterInputStream {
+
+  private static final int GZIP_MAGIC = 0x8b1f;
+
+  // Header flags, see RFC 1952.
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private final CRC32 crc = new CRC32();
+  private boolean eos;
+  private boolean closed;
+
+  /**
+   * Creates a stream reading gzip data from another stream.
+   *
+   * @throws IOException if the gzip header can't be read.
+   */
+  PooledGZIPInputStream(InputStream in) throws IOException {
+    super(in, ZlibPool.getInflater(), 512);
+    try {
+      readHeader(in);
+    } catch (IOException e) {
+      closed = true;
+      ZlibPool.releaseInflater(inf);
+      throw e;
+    }
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    while (!eos) {
+      int n = super.read(b, off, len);
+      if (n != -1) {
+        crc.update(b, off, n);
+        return n;
+      }
+      eos = readTrailer();
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      eos = true;
+      try {
+        super.close();
+      } finally {
+        ZlibPool.releaseInflater(inf);
+      }
+    }
+  }
+
+  /**
+   * Reads a member header and returns its length in bytes.
+   */
+  private int readHeader(InputStream source) throws IOException {
+    CheckedInputStream in = new CheckedInputStream(source, crc);
+    crc.reset();
+    if (readUShort(in) != GZIP_MAGIC) {
+      throw new ZipException("Not in GZIP format");
+    }
+    if (readUByte(in) != 8) {
+      throw new ZipException("Unsupported compression method");
+    }
+    int flags = readUByte(in);
+    skipBytes(in, 6);
+    int n = 10;
+    if ((flags & FEXTRA) != 0) {
+      int extraLength = readUShort(in);
+      skipBytes(in, extraLength);
+      n += extraLength + 2;
+    }
+    if ((flags & FNAME) != 0) {
+      do {
+        n++;
+      } while (readUByte(in) != 0);
+    }
+    if ((flags & FCOMMENT) != 0) {
+      do {
+        n++;
+      } while (readUByte(in) != 0);
+    }
+    if ((flags & FHCRC) != 0) {
+      int headerCrc = (int) crc.getValue() & 0xffff;
+      if (readUShort(in) != headerCrc) {
+        throw new ZipException("Corrupt GZIP header");
+      }
+      n += 2;
+    }
+    crc.reset();
+    return n;
+  }
+
+  /**
+   * Reads a member trailer and the header of the next member, if any.
+   *
+   * @return {@code true} if the end of the stream has been reached.
+   */
+  private boolean readTrailer() throws IOException {
+    InputStream source = this.in;
+    int remaining = inf.getRemaining();
+    if (remaining > 0) {
+      source = new SequenceInputStream(
+          new ByteArrayInputStream(buf, len - remaining, remaining),
+          new FilterInputStream(source) {
+            @Override
+            public void close() {}
+          });
+    }
+    if (readUInt(source) != crc.getValue()
+        || readUInt(source) != (inf.getBytesWritten() & 0xffffffffL)) {
+      throw new ZipException("Corrupt GZIP trailer");
+    }
+
+    // Continue with the next member, if there is one.
+    if (this.in.available() > 0 || remaining > 26) {
+      int consumed = 8;
+      try {
+        consumed += readHeader(source);
+      } catch (IOException e) {
+        return true;  // Ignore trailing garbage, like GZIPInputStream.
+      }
+      inf.reset();
+      if (remaining > consumed) {
+        inf.setInput(buf, len - remaining + consumed, remaining - consumed);
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private static long readUInt(InputStream in) throws IOException {
+    long low = readUShort(in);
+    return ((long) readUShort(in) << 16) | low;
+  }
+
+  private static int readUShort(InputStream in) throws IOException {
+    int low = readUByte(in);
+    return (readUByte(in) << 8) | low;
+  }
+
+  private static int readUByte(InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1) {
+      throw new EOFException();
+    }
+    return b;
+  }
+
+  private static void skipBytes(InputStream in, int n) throws IOException {
+    while (n-- > 0) {
+      readUByte(in);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes gzip encoded data like {@link java.util.zip.GZIPOutputStream}, using
+ * a deflater from {@link ZlibPool} that is returned to the pool when the
+ * stream is closed.
+ *
+ *
+ */
+class PooledGZIPOutputStream extends DeflaterOutputStream {
+
+  /** Member header: magic, deflate method, no flags, mtime, xfl and os. */
+  private static final byte[] HEADER =
+      { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0 };
+
+  private final CRC32 crc = new CRC32();
+  private boolean closed;
+
+  /**
+   * Creates a stream writing gzip data to another stream.
+   *
+   * @throws IOException if the gzip header can't be written.
+   */
+  PooledGZIPOutputStream(OutputStream out) throws IOException {
+    super(out, ZlibPool.getDeflater(), 512);
+    try {
+      out.write(HEADER);
+    } catch (IOException e) {
+      ZlibPool.releaseDeflater(def);
+      closed = true;
+      throw e;
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    super.write(b, off, len);
+    crc.update(b, off, len);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    if (!def.finished()) {
+      super.finish();
+      writeInt((int) crc.getValue());
+      writeInt((int) def.getBytesRead());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        finish();
+        out.close();
+      } finally {
+        ZlibPool.releaseDeflater(def);
+      }
+    }
+  }
+
+  /** Writes an int in little-endian byte order. */
+  private void writeInt(int i) throws IOException {
+    out.write(i & 0xff);
+    out.write((i >> 8) & 0xff);
+    out.write((i >> 16) & 0xff);
+    out.write((i >> 24) & 0xff);
+  }
+}
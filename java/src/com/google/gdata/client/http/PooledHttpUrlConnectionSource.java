@@ -0,0 +1,422 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link HttpUrlConnectionSource} that bounds the number of concurrently
+ * open connections to each host and returns released connections to the JDK
+ * keep-alive cache so that their sockets can be reused by later requests.
+ * <p>
+ * Callers block in {@link #openConnection(URL)} while the host is at its
+ * connection limit, for at most the configured acquire timeout.  Connections
+ * are released by {@link HttpGDataRequest#end()}; any unread error response
+ * is drained first, since the JDK only recycles a socket once the previous
+ * response has been fully consumed.
+ * <p>
+ * Socket-level keep-alive itself is still managed by the JDK (see the
+ * {@code http.keepAlive} and {@code http.maxConnections} system properties);
+ * the idle timeout configured here evicts the per-host bookkeeping of hosts
+ * that have not been used recently.
+ * <p>
+ * A single instance is meant to be shared by all request factories that talk
+ * to the same set of hosts:
+ * <pre>
+ * PooledHttpUrlConnectionSource pool = new PooledHttpUrlConnectionSource(10);
+ * ((HttpGDataRequest.Factory) service.getRequestFactory())
+ *     .setConnectionSource(pool);
+ * </pre>
+ */
+public class PooledHttpUrlConnectionSource
+    implements ReleasableHttpUrlConnectionSource {
+
+  private static final Logger logger =
+      Logger.getLogger(PooledHttpUrlConnectionSource.class.getName());
+
+  /**
+   * Default maximum number of concurrent connections per host, matching the
+   * default size of the JDK keep-alive cache.
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+  /** Default time to wait for a free connection slot, in milliseconds. */
+  public static final long DEFAULT_ACQUIRE_TIMEOUT = 60 * 1000;
+
+  /** Default idle time before host state is evicted, in milliseconds. */
+  public static final long DEFAULT_IDLE_TIMEOUT = 5 * 60 * 1000;
+
+  /**
+   * Maximum number of bytes read from an unconsumed error response to make
+   * its socket reusable.  Larger responses cause the connection to be closed.
+   */
+  private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+  /**
+   * Connection state for a single host.
+   */
+  private class HostPool {
+
+    private final String key;
+    private final Semaphore permits =
+        new Semaphore(maxConnectionsPerHost, true);
+
+    /** Number of threads holding or waiting for a permit. */
+    private final AtomicInteger users = new AtomicInteger();
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /** Set once the pool has been removed from the host map; guarded by this. */
+    private boolean evicted;
+
+    private HostPool(String key) {
+      this.key = key;
+    }
+
+    private boolean isIdle(long now) {
+      return users.get() == 0 && now - lastUsed > idleTimeout;
+    }
+
+    /**
+     * Registers the caller as a user of this pool.  Returns {@code false} if
+     * the pool has already been evicted and must not be used.
+     */
+    private synchronized boolean register() {
+      if (evicted) {
+        return false;
+      }
+      users.incrementAndGet();
+      return true;
+    }
+
+    /**
+     * Marks this pool as evicted if it has been idle for longer than the idle
+     * timeout.  Checking and marking under the same lock as
+     * {@link #register()} ensures no user can join an evicted pool.
+     */
+    private synchronized boolean evictIfIdle(long now) {
+      if (evicted || !isIdle(now)) {
+        return false;
+      }
+      evicted = true;
+      return true;
+    }
+  }
+
+  private final HttpUrlConnectionSource delegate;
+  private final int maxConnectionsPerHost;
+  private volatile long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+  private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+  private volatile long lastEviction = System.currentTimeMillis();
+
+  private final ConcurrentMap<String, HostPool> hosts =
+      new ConcurrentHashMap<String, HostPool>();
+  private final ConcurrentMap<HttpURLConnection, HostPool> leased =
+      new ConcurrentHashMap<HttpURLConnection, HostPool>();
+
+  private final AtomicLong openedCount = new AtomicLong();
+  private final AtomicLong waitCount = new AtomicLong();
+  private final AtomicLong timeoutCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  /**
+   * Constructs a pool with the default per-host connection limit that opens
+   * connections using {@link JdkHttpUrlConnectionSource}.
+   */
+  public PooledHttpUrlConnectionSource() {
+    this(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+  }
+
+  /**
+   * Constructs a pool that opens connections using
+   * {@link JdkHttpUrlConnectionSource}.
+   *
+   * @param maxConnectionsPerHost maximum number of concurrent connections to
+   *        any single host
+   */
+  public PooledHttpUrlConnectionSource(int maxConnectionsPerHost) {
+    this(JdkHttpUrlConnectionSource.INSTANCE, maxConnectionsPerHost);
+  }
+
+  /**
+   * Constructs a pool that opens connections using the given source.
+   *
+   * @param delegate source of the underlying connections
+   * @param maxConnectionsPerHost maximum number of concurrent connections to
+   *        any single host
+   */
+  public PooledHttpUrlConnectionSource(HttpUrlConnectionSource delegate,
+      int maxConnectionsPerHost) {
+    if (delegate == null) {
+      throw new NullPointerException("delegate");
+    }
+    if (maxConnectionsPerHost <= 0) {
+      throw new IllegalArgumentException(
+          "maxConnectionsPerHost must be positive");
+    }
+    this.delegate = delegate;
+    this.maxConnectionsPerHost = maxConnectionsPerHost;
+  }
+
+  /**
+   * Sets the maximum time (in milliseconds) that {@link #openConnection(URL)}
+   * waits for a free connection slot.  A value of zero waits indefinitely.
+   */
+  public void setAcquireTimeout(long timeout) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative");
+    }
+    acquireTimeout = timeout;
+  }
+
+  /**
+   * Sets the time (in milliseconds) after which the state kept for a host
+   * without open connections is discarded.
+   */
+  public void setIdleTimeout(long timeout) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout cannot be negative");
+    }
+    idleTimeout = timeout;
+  }
+
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  public HttpURLConnection openConnection(URL url) throws IOException {
+    if (!url.getProtocol().startsWith("http")) {
+      throw new IllegalArgumentException("Not an HTTP url: " + url);
+    }
+    evictIdleHosts();
+
+    HostPool pool = acquire(getHostKey(url));
+    HttpURLConnection connection = null;
+    try {
+      connection = delegate.openConnection(url);
+      leased.put(connection, pool);
+      openedCount.incrementAndGet();
+      return connection;
+    } finally {
+      if (connection == null) {
+        release(pool);
+      }
+    }
+  }
+
+  public void releaseConnection(HttpURLConnection connection) {
+    HostPool pool = leased.remove(connection);
+    if (pool == null) {
+      return;
+    }
+    try {
+      drainErrorStream(connection);
+    } finally {
+      release(pool);
+    }
+  }
+
+  /**
+   * Returns the number of connections currently in use across all hosts.
+   */
+  public int getLeasedCount() {
+    return leased.size();
+  }
+
+  /**
+   * Returns the number of connections currently in use for the host of the
+   * given URL.
+   */
+  public int getLeasedCount(URL url) {
+    HostPool pool = hosts.get(getHostKey(url));
+    return pool == null
+        ? 0 : maxConnectionsPerHost - pool.permits.availablePermits();
+  }
+
+  /**
+   * Returns the number of hosts for which connection state is being kept.
+   */
+  public int getHostCount() {
+    return hosts.size();
+  }
+
+  /**
+   * Returns the total number of connections opened through this source.
+   */
+  public long getOpenedCount() {
+    return openedCount.get();
+  }
+
+  /**
+   * Returns the number of times a caller had to wait for a connection slot
+   * because its host was at the connection limit.
+   */
+  public long getWaitCount() {
+    return waitCount.get();
+  }
+
+  /**
+   * Returns the number of times a caller gave up waiting for a connection
+   * slot.
+   */
+  public long getTimeoutCount() {
+    return timeoutCount.get();
+  }
+
+  /**
+   * Returns the number of idle hosts whose state has been evicted.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * Reserves a connection slot for the given host, blocking while the host is
+   * at its connection limit.
+   */
+  private HostPool acquire(String key) throws IOException {
+    HostPool pool;
+    while (true) {
+      pool = hosts.get(key);
+      if (pool == null) {
+        HostPool newPool = new HostPool(key);
+        pool = hosts.putIfAbsent(key, newPool);
+        if (pool == null) {
+          pool = newPool;
+        }
+      }
+      // The pool may have been evicted since the lookup, in which case
+      // retry against a fresh one.
+      if (pool.register()) {
+        break;
+      }
+      hosts.remove(key, pool);
+    }
+
+    boolean acquired = false;
+    try {
+      acquired = pool.permits.tryAcquire();
+      if (!acquired) {
+        waitCount.incrementAndGet();
+        if (acquireTimeout == 0) {
+          pool.permits.acquire();
+          acquired = true;
+        } else {
+          acquired =
+              pool.permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(
+          "Interrupted waiting for a connection to " + key);
+    } finally {
+      if (!acquired) {
+        pool.users.decrementAndGet();
+      }
+    }
+    if (!acquired) {
+      timeoutCount.incrementAndGet();
+      throw new IOException("Timed out waiting for a connection to " + key);
+    }
+    pool.lastUsed = System.currentTimeMillis();
+    return pool;
+  }
+
+  private void release(HostPool pool) {
+    pool.lastUsed = System.currentTimeMillis();
+    pool.permits.release();
+    pool.users.decrementAndGet();
+  }
+
+  /**
+   * Discards the state of hosts that have had no connections for longer than
+   * the idle timeout.  Runs at most once per idle timeout period.
+   */
+  private void evictIdleHosts() {
+    long now = System.currentTimeMillis();
+    if (now - lastEviction < idleTimeout) {
+      return;
+    }
+    lastEviction = now;
+    for (Iterator<Map.Entry<String, HostPool>> iter =
+        hosts.entrySet().iterator(); iter.hasNext();) {
+      Map.Entry<String, HostPool> entry = iter.next();
+      HostPool pool = entry.getValue();
+      if (pool.evictIfIdle(now)) {
+        hosts.remove(entry.getKey(), pool);
+        evictionCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Reads and closes any unconsumed error response so the JDK can return the
+   * underlying socket to its keep-alive cache.  Connections with large
+   * pending responses are closed instead.
+   */
+  private void drainErrorStream(HttpURLConnection connection) {
+    // getErrorStream() never initiates a connection and returns null unless
+    // an error response is pending.
+    InputStream errorStream = connection.getErrorStream();
+    if (errorStream == null) {
+      return;
+    }
+    try {
+      byte[] buf = new byte[4096];
+      int total = 0;
+      int count;
+      while ((count = errorStream.read(buf)) != -1) {
+        total += count;
+        if (total > MAX_DRAIN_BYTES) {
+          connection.disconnect();
+          return;
+        }
+      }
+      errorStream.close();
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Error draining response stream", e);
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Returns the key identifying the host of a URL, including the scheme and
+   * the effective port.
+   */
+  private static String getHostKey(URL url) {
+    int port = url.getPort();
+    if (port == -1) {
+      port = url.getDefaultPort();
+    }
+    return url.getProtocol() + "://" + url.getHost().toLowerCase() + ":"
+        + port;
+  }
+}
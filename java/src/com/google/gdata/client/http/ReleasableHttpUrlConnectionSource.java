@@ -0,0 +1,37 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.net.HttpURLConnection;
+
+/**
+ * An {@link HttpUrlConnectionSource} that needs to be told when a connection
+ * it created is no longer in use, so it can reclaim any resources (such as
+ * per-host connection slots) associated with it.
+ */
+public interface ReleasableHttpUrlConnectionSource
+    extends HttpUrlConnectionSource {
+
+  /**
+   * Releases a connection previously returned by
+   * {@link #openConnection(java.net.URL)}.  Releasing a connection that was
+   * not created by this source, or that was already released, has no effect.
+   *
+   * @param connection connection to release
+   */
+  void releaseConnection(HttpURLConnection connection);
+}
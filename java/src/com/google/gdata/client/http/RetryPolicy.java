@@ -0,0 +1,354 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.Service.GDataRequest.RequestType;
+import com.google.gdata.data.DateTime;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.RateLimitExceededException;
+import com.google.gdata.util.ServiceException;
+
+import java.net.HttpURLConnection;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Policy for retrying requests that failed with a transient error: 429 (too
+ * many requests) and 5xx responses other than 501 (not implemented).
+ * Requests that are not idempotent (inserts, patches and batches) may have
+ * been applied even if they failed with a 5xx response, so they are only
+ * retried after 429 and 503 (service unavailable), which mean that the
+ * server did not process the request.  GData services report rate limit
+ * errors as 403 (forbidden) responses with a {@code rateLimitExceeded} or
+ * {@code userRateLimitExceeded} error code, which are retried as well.
+ * <p>
+ * The delay before each retry is chosen with decorrelated jitter: a random
+ * value between the base delay and three times the previous delay, capped
+ * at the maximum delay.  This spreads out the retries of clients that
+ * failed at the same time, instead of having them retry in sync.  A
+ * {@code Retry-After} response header is honored: the retry is delayed at
+ * least as long as requested, or not attempted if the server asks for more
+ * than the maximum delay.
+ * <p>
+ * Retries to each host are limited by a token bucket: every retry takes a
+ * token, and tokens are added back at a fixed rate up to the budget size.
+ * When a host keeps failing, retries stop once the budget is spent instead
+ * of multiplying the load on the host.
+ * <p>
+ * A policy is shared by all the requests it is set on and is thread-safe.
+ *
+ *
+ */
+public class RetryPolicy {
+
+  /** Default maximum number of retries of a request. */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  /** Default base delay before a retry, in milliseconds. */
+  public static final long DEFAULT_BASE_DELAY = 500;
+
+  /** Default maximum delay before a retry, in milliseconds. */
+  public static final long DEFAULT_MAX_DELAY = 64000;
+
+  /** Default number of retries a host can take in a burst. */
+  public static final int DEFAULT_HOST_BUDGET = 10;
+
+  /** Default number of retries added back to a host budget per second. */
+  public static final double DEFAULT_BUDGET_REFILL_RATE = 1.0;
+
+  /**
+   * Value returned by {@link #getRetryDelay} if the request shouldn't be
+   * retried.
+   */
+  public static final long STOP = -1L;
+
+  private static final Random random = new Random();
+
+  private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+  private volatile long baseDelay = DEFAULT_BASE_DELAY;
+  private volatile long maxDelay = DEFAULT_MAX_DELAY;
+  private volatile int hostBudget = DEFAULT_HOST_BUDGET;
+  private volatile double budgetRefillRate = DEFAULT_BUDGET_REFILL_RATE;
+
+  private final ConcurrentMap<String, TokenBucket> budgets =
+      new ConcurrentHashMap<String, TokenBucket>();
+
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong budgetExhaustedCount = new AtomicLong();
+
+  /**
+   * Sets the maximum number of times a request is retried.
+   */
+  public void setMaxRetries(int maxRetries) {
+    if (maxRetries < 0) {
+      throw new IllegalArgumentException("Invalid retry count: " + maxRetries);
+    }
+    this.maxRetries = maxRetries;
+  }
+
+  public int getMaxRetries() {
+    return maxRetries;
+  }
+
+  /**
+   * Sets the range of the delay before a retry, in milliseconds.
+   */
+  public void setDelays(long baseDelay, long maxDelay) {
+    if (baseDelay < 0 || maxDelay < baseDelay) {
+      throw new IllegalArgumentException("Invalid delays: " + baseDelay
+          + ", " + maxDelay);
+    }
+    this.baseDelay = baseDelay;
+    this.maxDelay = maxDelay;
+  }
+
+  public long getBaseDelay() {
+    return baseDelay;
+  }
+
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Sets the retry budget of each host: the number of retries it can take in
+   * a burst, and the number of retries added back per second.  Budgets that
+   * already exist keep their current size and rate.
+   */
+  public void setHostBudget(int hostBudget, double budgetRefillRate) {
+    if (hostBudget < 1 || budgetRefillRate < 0) {
+      throw new IllegalArgumentException("Invalid budget: " + hostBudget
+          + ", " + budgetRefillRate);
+    }
+    this.hostBudget = hostBudget;
+    this.budgetRefillRate = budgetRefillRate;
+  }
+
+  public int getHostBudget() {
+    return hostBudget;
+  }
+
+  public double getBudgetRefillRate() {
+    return budgetRefillRate;
+  }
+
+  /**
+   * Returns the total number of retries allowed by this policy.
+   */
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  /**
+   * Returns the number of retries refused because the budget of the host was
+   * spent.
+   */
+  public long getBudgetExhaustedCount() {
+    return budgetExhaustedCount.get();
+  }
+
+  /**
+   * Returns {@code true} if a request of the given type that received a
+   * response with the given status code may be retried.
+   *
+   * @param type type of the request, or {@code null} if unknown.
+   * @param responseCode HTTP status code of the response.
+   */
+  protected boolean isRetryable(RequestType type, int responseCode) {
+    if (responseCode == 429
+        || responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+      return true;
+    }
+    return isIdempotent(type)
+        && responseCode >= 500
+        && responseCode != HttpURLConnection.HTTP_NOT_IMPLEMENTED
+        && responseCode != HttpURLConnection.HTTP_VERSION;
+  }
+
+  /**
+   * Returns {@code true} if an error response reports that a rate limit was
+   * exceeded, which means that the request was not processed.
+   *
+   * @param error exception parsed from the error response.
+   */
+  protected boolean isRateLimitError(ServiceException error) {
+    if (error instanceof RateLimitExceededException) {
+      return true;
+    }
+    for (ServiceException sibling : error.getSiblings()) {
+      String code = sibling.getCodeName();
+      if ("rateLimitExceeded".equals(code)
+          || "userRateLimitExceeded".equals(code)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns {@code true} if sending a request of the given type more than
+   * once has the same effect as sending it once.
+   */
+  protected boolean isIdempotent(RequestType type) {
+    return type == RequestType.QUERY
+        || type == RequestType.UPDATE
+        || type == RequestType.DELETE;
+  }
+
+  /**
+   * Returns the delay before retrying a request, or {@link #STOP} if it
+   * shouldn't be retried.  A retry is allowed if the status code is
+   * retryable, the request hasn't been retried {@link #getMaxRetries()}
+   * times, the delay requested by the server doesn't exceed the maximum
+   * delay, and the host has budget left.
+   *
+   * @param type type of the request, or {@code null} if unknown.
+   * @param host host the request was sent to.
+   * @param retries number of times the request has already been retried.
+   * @param previousDelay delay before the previous retry, or {@code 0}.
+   * @param responseCode HTTP status code of the response.
+   * @param retryAfter value of the {@code Retry-After} response header, or
+   *     {@code null}.
+   */
+  public long getRetryDelay(RequestType type, String host, int retries,
+      long previousDelay, int responseCode, String retryAfter) {
+    if (!isRetryable(type, responseCode)) {
+      return STOP;
+    }
+    return getRetryDelay(host, retries, previousDelay, retryAfter);
+  }
+
+  /**
+   * Returns the delay before retrying a request that failed with an error
+   * response, or {@link #STOP} if it shouldn't be retried.  This is used for
+   * errors that can only be told apart by the content of the response, like
+   * rate limit errors (see {@link #isRateLimitError(ServiceException)}).
+   * Otherwise the same conditions as for
+   * {@link #getRetryDelay(RequestType, String, int, long, int, String)}
+   * apply.
+   *
+   * @param type type of the request, or {@code null} if unknown.
+   * @param host host the request was sent to.
+   * @param retries number of times the request has already been retried.
+   * @param previousDelay delay before the previous retry, or {@code 0}.
+   * @param error exception parsed from the error response.
+   * @param retryAfter value of the {@code Retry-After} response header, or
+   *     {@code null}.
+   */
+  public long getRetryDelay(RequestType type, String host, int retries,
+      long previousDelay, ServiceException error, String retryAfter) {
+    if (!isRateLimitError(error)) {
+      return STOP;
+    }
+    return getRetryDelay(host, retries, previousDelay, retryAfter);
+  }
+
+  private long getRetryDelay(String host, int retries, long previousDelay,
+      String retryAfter) {
+    if (retries >= maxRetries) {
+      return STOP;
+    }
+
+    long base = baseDelay;
+    long max = maxDelay;
+    long upper = Math.min(max, Math.max(base, previousDelay * 3));
+    long delay = base + (long) (random.nextDouble() * (upper - base));
+
+    long serverDelay = parseRetryAfter(retryAfter, System.currentTimeMillis());
+    if (serverDelay > max) {
+      return STOP;
+    }
+    delay = Math.max(delay, serverDelay);
+
+    if (!getBudget(host).tryAcquire()) {
+      budgetExhaustedCount.incrementAndGet();
+      return STOP;
+    }
+    retryCount.incrementAndGet();
+    return delay;
+  }
+
+  /**
+   * Returns the delay requested by a {@code Retry-After} header, given as a
+   * number of seconds or as an HTTP date, in milliseconds, or {@code -1} if
+   * the header is missing or invalid.
+   */
+  static long parseRetryAfter(String retryAfter, long now) {
+    if (retryAfter == null) {
+      return -1;
+    }
+    retryAfter = retryAfter.trim();
+    try {
+      long seconds = Long.parseLong(retryAfter);
+      return seconds < 0 ? -1 : seconds * 1000;
+    } catch (NumberFormatException e) {
+      // Not a number of seconds, try a date.
+    }
+    try {
+      return Math.max(0,
+          DateTime.parseRfc822(retryAfter).getValue() - now);
+    } catch (ParseException e) {
+      return -1;
+    }
+  }
+
+  private TokenBucket getBudget(String host) {
+    TokenBucket budget = budgets.get(host);
+    if (budget == null) {
+      budget = new TokenBucket(hostBudget, budgetRefillRate);
+      TokenBucket existing = budgets.putIfAbsent(host, budget);
+      if (existing != null) {
+        budget = existing;
+      }
+    }
+    return budget;
+  }
+
+  /**
+   * A token bucket, holding up to {@code capacity} tokens and refilled with
+   * {@code rate} tokens per second.
+   */
+  private static class TokenBucket {
+
+    private final double capacity;
+    private final double ratePerMilli;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(int capacity, double rate) {
+      this.capacity = capacity;
+      this.ratePerMilli = rate / 1000;
+      this.tokens = capacity;
+      this.lastRefill = System.currentTimeMillis();
+    }
+
+    synchronized boolean tryAcquire() {
+      long now = System.currentTimeMillis();
+      if (now > lastRefill) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerMilli);
+        lastRefill = now;
+      }
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pools the {@link Inflater} and {@link Deflater} instances used for gzip
+ * encoded requests and responses.  Each instance holds native zlib state that
+ * is relatively expensive to allocate and is otherwise only freed when the
+ * instance is finalized.
+ * <p>
+ * The pool keeps a bounded number of idle instances; instances released
+ * while the pool is full are ended immediately.
+ *
+ *
+ */
+final class ZlibPool {
+
+  /** Maximum number of idle instances kept of each type. */
+  private static final int MAX_IDLE = 16;
+
+  private static final Queue<Inflater> inflaters =
+      new ConcurrentLinkedQueue<Inflater>();
+  private static final AtomicInteger idleInflaters = new AtomicInteger();
+
+  private static final Queue<Deflater> deflaters =
+      new ConcurrentLinkedQueue<Deflater>();
+  private static final AtomicInteger idleDeflaters = new AtomicInteger();
+
+  private ZlibPool() {}
+
+  /** Returns an inflater for raw deflate data, as contained in gzip data. */
+  static Inflater getInflater() {
+    Inflater inflater = inflaters.poll();
+    if (inflater == null) {
+      return new Inflater(true);
+    }
+    idleInflaters.decrementAndGet();
+    return inflater;
+  }
+
+  /**
+   * Returns an inflater obtained from {@link #getInflater()} to the pool.  The
+   * inflater must not be used afterwards.
+   */
+  static void releaseInflater(Inflater inflater) {
+    if (idleInflaters.incrementAndGet() <= MAX_IDLE) {
+      inflater.reset();
+      inflaters.offer(inflater);
+    } else {
+      idleInflaters.decrementAndGet();
+      inflater.end();
+    }
+  }
+
+  /** Returns a deflater for raw deflate data, as contained in gzip data. */
+  static Deflater getDeflater() {
+    Deflater deflater = deflaters.poll();
+    if (deflater == null) {
+      return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+    idleDeflaters.decrementAndGet();
+    return deflater;
+  }
+
+  /**
+   * Returns a deflater obtained from {@link #getDeflater()} to the pool.  The
+   * deflater must not be used afterwards.
+   */
+  static void releaseDeflater(Deflater deflater) {
+    if (idleDeflaters.incrementAndGet() <= MAX_IDLE) {
+      deflater.reset();
+      deflaters.offer(deflater);
+    } else {
+      idleDeflaters.decrementAndGet();
+      deflater.end();
+    }
+  }
+}
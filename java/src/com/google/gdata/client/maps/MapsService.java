@@ -142,11 +142,15 @@ public class MapsService extends MediaService {
    * Declare the extensions of the feeds for the Google Maps Data API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new AclFeed().declareExtensions(extProfile);
     new FeatureFeed().declareExtensions(extProfile);
     new MapFeed().declareExtensions(extProfile);
     new VersionFeed().declareExtensions(extProfile);
     BatchUtils.declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -30,7 +30,6 @@ import com.google.gdata.data.ParseSource;
 import com.google.gdata.data.media.IMediaContent;
 import com.google.gdata.data.media.IMediaEntry;
 import com.google.gdata.data.media.MediaFileSource;
-import com.google.gdata.data.media.MediaMultipart;
 import com.google.gdata.data.media.MediaSource;
 import com.google.gdata.data.media.MediaStreamSource;
 import com.google.gdata.util.ContentType;
@@ -42,15 +41,32 @@ import com.google.gdata.wireformats.input.media.MediaMultipartParser;
 import com.google.gdata.wireformats.input.media.MediaParser;
 import com.google.gdata.wireformats.output.media.MediaGenerator;
 import com.google.gdata.wireformats.output.media.MediaMultipartGenerator;
+import com.google.gdata.wireformats.output.media.MediaMultipartWriter;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
-import javax.mail.MessagingException;
 
 /**
  * The MediaService class extends the base {@link GoogleService} class to add
@@ -82,6 +98,46 @@ public class MediaService extends GoogleService {
    * {@link #NO_CHUNKED_MEDIA_REQUEST}, no chunking will be performed. 
    */
   private int chunkedBufferSize = DEFAULT_CHUNKED_BUFFER_SIZE;
+
+  /**
+   * Default size of the byte ranges fetched by a parallel media download.
+   */
+  public static final long DEFAULT_DOWNLOAD_RANGE_SIZE = 8 * 1024 * 1024;
+
+  /**
+   * Maximum number of times the download of a byte range is resumed after an
+   * I/O error.
+   */
+  private static final int MAX_DOWNLOAD_RETRIES = 3;
+
+  /**
+   * Size of the direct buffer used to copy downloaded media.
+   */
+  private static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadFactory DOWNLOAD_THREAD_FACTORY =
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r,
+              "gdata-media-download-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      };
+
+  /**
+   * Maximum number of byte ranges fetched concurrently when downloading
+   * media to a file.
+   */
+  private int maxParallelDownloads = 1;
+
+  /**
+   * Size of the byte ranges fetched concurrently when downloading media to a
+   * file.
+   */
+  private long downloadRangeSize = DEFAULT_DOWNLOAD_RANGE_SIZE;
   
   /**
    * Returns an {@link AltRegistry} instance that is configured with the
@@ -206,6 +262,30 @@ public class MediaService extends GoogleService {
   public void setChunkedMediaUpload(int chunkSizeInBytes) { 
     this.chunkedBufferSize = chunkSizeInBytes;
   }
+
+  /**
+   * Configures the service to download media to files in byte ranges fetched
+   * concurrently.  Ranges are only used if the server supports them, as
+   * indicated by a partial (206) response to the first range.
+   * <p>
+   * By default, media is downloaded in a single request.
+   *
+   * @param maxParallelRanges maximum number of ranges fetched at once, or
+   *     {@code 1} to download media in a single request.
+   * @param rangeSizeInBytes size of each range.
+   *     Use {@link #DEFAULT_DOWNLOAD_RANGE_SIZE} for the default value.
+   *
+   * @see #downloadMedia(IMediaContent, File)
+   */
+  public void setParallelMediaDownload(int maxParallelRanges,
+      long rangeSizeInBytes) {
+    Preconditions.checkArgument(maxParallelRanges > 0,
+        "Invalid number of parallel ranges: %s", maxParallelRanges);
+    Preconditions.checkArgument(rangeSizeInBytes > 0,
+        "Invalid range size: %s", rangeSizeInBytes);
+    this.maxParallelDownloads = maxParallelRanges;
+    this.downloadRangeSize = rangeSizeInBytes;
+  }
   
   /**
    * Returns a {@link MediaSource} that can be used to read the media pointed
@@ -302,6 +382,334 @@ public class MediaService extends GoogleService {
     return getMedia(mediaContent, null);
   }
 
+  /**
+   * Downloads the external media content of an entry to a file.  If the
+   * service was configured with {@link #setParallelMediaDownload}, the media
+   * is fetched in byte ranges requested concurrently, each written at its
+   * position in the file.  The download of each range is resumed if it
+   * fails with an I/O error.
+   *
+   * @param mediaContent the media content describing the media
+   * @param file file to write the media to.  It is overwritten if it exists.
+   * @return the length of the media, in bytes.
+   * @throws IOException error communicating with the GData service or
+   *     writing the file, or the media changed during the download.
+   * @throws ServiceException media request failed.
+   */
+  public long downloadMedia(IMediaContent mediaContent, File file)
+      throws IOException, ServiceException {
+
+    URL mediaUrl = getMediaUrl(mediaContent);
+    try {
+      return downloadMediaResource(
+          mediaUrl, mediaContent.getMimeType(), file);
+    } catch (RedirectRequiredException e) {
+      mediaUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+    return downloadMediaResource(mediaUrl, mediaContent.getMimeType(), file);
+  }
+
+  /**
+   * Downloads the external media content of an entry to a channel, starting
+   * at an offset.  A previously interrupted download can be resumed by
+   * passing the number of bytes already received as the offset.  The
+   * download is also resumed if it fails with an I/O error while reading the
+   * media.
+   *
+   * @param mediaContent the media content describing the media
+   * @param target channel the media is written to.
+   * @param offset offset of the first byte of the media to download.
+   * @return the number of bytes written to the channel.
+   * @throws IOException error communicating with the GData service or
+   *     writing to the channel, or the media changed during the download.
+   * @throws ServiceException media request failed.
+   */
+  public long downloadMedia(IMediaContent mediaContent,
+      WritableByteChannel target, long offset)
+      throws IOException, ServiceException {
+    Preconditions.checkArgument(offset >= 0, "Invalid offset: %s", offset);
+
+    URL mediaUrl = getMediaUrl(mediaContent);
+    ContentType contentType = mediaContent.getMimeType();
+    GDataRequest request;
+    try {
+      request = openMediaRange(mediaUrl, contentType, offset, -1, null);
+    } catch (RedirectRequiredException e) {
+      mediaUrl = handleRedirectException(e);
+      request = openMediaRange(mediaUrl, contentType, offset, -1, null);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+      request = openMediaRange(mediaUrl, contentType, offset, -1, null);
+    }
+    String etag = request.getResponseHeader(GDataProtocol.Header.ETAG);
+    return downloadRange(mediaUrl, contentType, etag, request,
+        target, false, offset, -1) - offset;
+  }
+
+  /**
+   * Returns the URL of external media content.
+   */
+  private URL getMediaUrl(IMediaContent mediaContent) throws ServiceException {
+    try {
+      return new URL(mediaContent.getUri());
+    } catch (MalformedURLException mue) {
+      throw new ServiceException(
+          CoreErrorDomain.ERR.invalidMediaSourceUri, mue);
+    }
+  }
+
+  /**
+   * Downloads media to a file, in concurrent byte ranges if enabled.
+   */
+  private long downloadMediaResource(final URL mediaUrl,
+      final ContentType contentType, File file)
+      throws IOException, ServiceException {
+
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    try {
+      final FileChannel channel = out.getChannel();
+      long firstEnd = maxParallelDownloads > 1 ? downloadRangeSize : -1;
+      GDataRequest request;
+      try {
+        request = openMediaRange(mediaUrl, contentType, 0, firstEnd, null);
+      } catch (ServiceException e) {
+        // Empty media has no satisfiable range.
+        if (firstEnd < 0 || e.getHttpErrorCodeOverride() != 416) {
+          throw e;
+        }
+        firstEnd = -1;
+        request = openMediaRange(mediaUrl, contentType, 0, -1, null);
+      }
+      final String etag = request.getResponseHeader(GDataProtocol.Header.ETAG);
+      if (request.getResponseHeader(
+          GDataProtocol.Header.CONTENT_RANGE) == null) {
+        // The server doesn't support ranges and returned all the media.
+        firstEnd = -1;
+      }
+      long length = getMediaLength(request);
+      if (firstEnd < 0 || length < 0) {
+        // A single response holds all the media, or the server didn't report
+        // its length and the rest is fetched in a single request.
+        long position = downloadRange(mediaUrl, contentType, etag, request,
+            channel, true, 0, firstEnd < 0 ? -1 : firstEnd);
+        if (firstEnd >= 0 && position == firstEnd) {
+          position = downloadRange(mediaUrl, contentType, etag,
+              openMediaRange(mediaUrl, contentType, position, -1, etag),
+              channel, true, position, -1);
+        }
+        channel.truncate(position);
+        return position;
+      }
+
+      firstEnd = Math.min(firstEnd, length);
+      ExecutorService executor = Executors.newFixedThreadPool(
+          maxParallelDownloads - 1, DOWNLOAD_THREAD_FACTORY);
+      List<Future<Long>> ranges = new ArrayList<Future<Long>>();
+      try {
+        for (long start = firstEnd; start < length;
+            start += downloadRangeSize) {
+          final long rangeStart = start;
+          final long rangeEnd = Math.min(start + downloadRangeSize, length);
+          ranges.add(executor.submit(new Callable<Long>() {
+            public Long call() throws IOException, ServiceException {
+              GDataRequest rangeRequest = openMediaRange(
+                  mediaUrl, contentType, rangeStart, rangeEnd, etag);
+              return downloadRange(mediaUrl, contentType, etag, rangeRequest,
+                  channel, true, rangeStart, rangeEnd);
+            }
+          }));
+        }
+        downloadRange(mediaUrl, contentType, etag, request,
+            channel, true, 0, firstEnd);
+        for (Future<Long> range : ranges) {
+          range.get();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Media download interrupted");
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof ServiceException) {
+          throw (ServiceException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException("Media download failed", cause);
+      } finally {
+        executor.shutdownNow();
+      }
+      channel.truncate(length);
+      return length;
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Sends a request for a byte range of media and returns the request, whose
+   * response starts at the first byte of the range.
+   *
+   * @param mediaUrl the media url.
+   * @param contentType media content type.
+   * @param start offset of the first byte of the range.
+   * @param end offset after the last byte of the range, or {@code -1} for
+   *     the end of the media.
+   * @param etag entity tag the media is expected to have, or {@code null}.
+   * @throws IOException the media has changed or the response doesn't match
+   *     the range.
+   */
+  private GDataRequest openMediaRange(URL mediaUrl, ContentType contentType,
+      long start, long end, String etag)
+      throws IOException, ServiceException {
+
+    GDataRequest request = createRequest(GDataRequest.RequestType.QUERY,
+        mediaUrl, contentType);
+    boolean opened = false;
+    try {
+      if (start > 0 || end >= 0) {
+        request.setHeader(GDataProtocol.Header.RANGE,
+            "bytes=" + start + "-" + (end >= 0 ? String.valueOf(end - 1) : ""));
+        if (etag != null && !etag.startsWith("W/")) {
+          request.setHeader(GDataProtocol.Header.IF_RANGE, etag);
+        }
+      }
+      try {
+        startVersionScope();
+        request.execute();
+      } finally {
+        endVersionScope();
+      }
+
+      String responseEtag =
+          request.getResponseHeader(GDataProtocol.Header.ETAG);
+      if (etag != null && responseEtag != null && !etag.equals(responseEtag)) {
+        throw new IOException("Media changed during download");
+      }
+      String contentRange =
+          request.getResponseHeader(GDataProtocol.Header.CONTENT_RANGE);
+      if (contentRange != null) {
+        if (getRangeStart(contentRange) != start) {
+          throw new IOException("Unexpected range: " + contentRange);
+        }
+      } else if (start > 0) {
+        // The server ignored the range and returned all the media.
+        skipFully(request.getResponseStream(), start);
+      }
+      opened = true;
+      return request;
+    } finally {
+      if (!opened) {
+        request.end();
+      }
+    }
+  }
+
+  /**
+   * Copies the response to a media range request to a channel, resuming the
+   * download if reading the response fails, and ends the request.
+   *
+   * @param target channel the media is written to.
+   * @param positional {@code true} to write the range at its position in
+   *     the target, which must be a {@link FileChannel}, or {@code false} to
+   *     write sequentially.
+   * @return the offset after the last byte downloaded.
+   */
+  private long downloadRange(URL mediaUrl, ContentType contentType,
+      String etag, GDataRequest request, WritableByteChannel target,
+      boolean positional, long start, long end)
+      throws IOException, ServiceException {
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(DOWNLOAD_BUFFER_SIZE);
+    long position = start;
+    int retries = 0;
+    try {
+      ReadableByteChannel source =
+          Channels.newChannel(request.getResponseStream());
+      while (end < 0 || position < end) {
+        buffer.clear();
+        if (end >= 0 && end - position < buffer.capacity()) {
+          buffer.limit((int) (end - position));
+        }
+        try {
+          if (source.read(buffer) < 0) {
+            if (end < 0) {
+              break;
+            }
+            throw new EOFException("Media ended at offset " + position);
+          }
+        } catch (IOException e) {
+          if (retries++ >= MAX_DOWNLOAD_RETRIES) {
+            throw e;
+          }
+          request.end();
+          request = openMediaRange(mediaUrl, contentType, position, end, etag);
+          source = Channels.newChannel(request.getResponseStream());
+          continue;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          position += positional
+              ? ((FileChannel) target).write(buffer, position)
+              : target.write(buffer);
+        }
+      }
+    } finally {
+      request.end();
+    }
+    return position;
+  }
+
+  /**
+   * Returns the total length of the media given by the {@code Content-Range}
+   * header of a response, or {@code -1} if it is unknown.
+   */
+  private static long getMediaLength(GDataRequest request) {
+    String contentRange =
+        request.getResponseHeader(GDataProtocol.Header.CONTENT_RANGE);
+    if (contentRange == null) {
+      return -1;
+    }
+    int slash = contentRange.lastIndexOf('/');
+    try {
+      return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the offset of the first byte of a {@code Content-Range} header
+   * of the form {@code bytes <first>-<last>/<length>}, or {@code -1} if it
+   * is invalid.
+   */
+  private static long getRangeStart(String contentRange) {
+    int space = contentRange.indexOf(' ');
+    int dash = contentRange.indexOf('-');
+    try {
+      return dash < space ? -1
+          : Long.parseLong(contentRange.substring(space + 1, dash).trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private static void skipFully(InputStream in, long count) throws IOException {
+    while (count > 0) {
+      long skipped = in.skip(count);
+      if (skipped <= 0) {
+        if (in.read() < 0) {
+          throw new EOFException("Media shorter than requested offset");
+        }
+        skipped = 1;
+      }
+      count -= skipped;
+    }
+  }
+
   /**
    * Initializes the attributes of a media request.
    */
@@ -312,7 +720,7 @@ public class MediaService extends GoogleService {
     if (chunkedBufferSize != NO_CHUNKED_MEDIA_REQUEST
         && request instanceof HttpGDataRequest) {
       HttpGDataRequest httpRequest = (HttpGDataRequest) request;
-      httpRequest.getConnection().setChunkedStreamingMode(chunkedBufferSize);
+      httpRequest.setChunkedStreamingMode(chunkedBufferSize);
     }
   }
 
@@ -323,6 +731,29 @@ public class MediaService extends GoogleService {
     initMediaRequest(request, media.getName());
   }
 
+  /**
+   * Writes an entry and its media as MIME multipart content to a request.
+   * The content is streamed with a fixed length if the media length is
+   * known, or in chunks otherwise, unless chunked media requests are
+   * disabled.
+   */
+  private void writeMultipartRequestData(GDataRequest request,
+      MediaMultipartWriter multipart, IEntry entry) throws IOException {
+    ClientOutputProperties outProps =
+        new ClientOutputProperties(request, entry);
+    if (chunkedBufferSize != NO_CHUNKED_MEDIA_REQUEST
+        && request instanceof HttpGDataRequest) {
+      HttpGDataRequest httpRequest = (HttpGDataRequest) request;
+      long contentLength = multipart.getContentLength(outProps);
+      if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+        httpRequest.setFixedLengthStreamingMode((int) contentLength);
+      } else {
+        httpRequest.setChunkedStreamingMode(chunkedBufferSize);
+      }
+    }
+    multipart.writeTo(request.getRequestStream(), outProps);
+  }
+
   /**
    * An escaper for slug header values.  From the atom spec, the range
    * %20-24 and %26-7E are unescaped.  The {@link PercentEscaper} always
@@ -388,21 +819,19 @@ public class MediaService extends GoogleService {
       // Write as MIME multipart containing the entry and media.  Use the
       // content type from the multipart since this contains auto-generated
       // boundary attributes.
-      MediaMultipart mediaMultipart = new MediaMultipart(entry, media);
+      MediaMultipartWriter multipart = new MediaMultipartWriter(entry, media);
       request =
           createRequest(GDataRequest.RequestType.INSERT, feedUrl,
-              new ContentType(mediaMultipart.getContentType()));
+              multipart.getContentType());
 
-      initMediaRequest(request, media);
+      if (media.getName() != null) {
+        request.setHeader("Slug", escapeSlug(media.getName()));
+      }
 
-      writeRequestData(request,
-          new ClientOutputProperties(request, entry), mediaMultipart);
+      writeMultipartRequestData(request, multipart, entry);
       request.execute();
       return parseResponseData(request, classOf(entry));
 
-    } catch (MessagingException e) {
-      throw new ServiceException(
-          CoreErrorDomain.ERR.cantWriteMimeMultipart, e);
     } finally {
       endVersionScope();
       if (request != null) {
@@ -523,18 +952,14 @@ public class MediaService extends GoogleService {
       // Write as MIME multipart containing the entry and media.  Use the
       // content type from the multipart since this contains auto-generated
       // boundary attributes.
-      MediaMultipart mediaMultipart = new MediaMultipart(entry, media);
+      MediaMultipartWriter multipart = new MediaMultipartWriter(entry, media);
       request =  createRequest(GDataRequest.RequestType.UPDATE, mediaUrl,
-          new ContentType(mediaMultipart.getContentType()));
+          multipart.getContentType());
 
-      writeRequestData(request,
-          new ClientOutputProperties(request, entry), mediaMultipart);
+      writeMultipartRequestData(request, multipart, entry);
       request.execute();
       return parseResponseData(request, classOf(entry));
 
-    } catch (MessagingException e) {
-      throw new ServiceException(
-          CoreErrorDomain.ERR.cantWriteMimeMultipart, e);
     } finally {
       endVersionScope();
       if (request != null) {
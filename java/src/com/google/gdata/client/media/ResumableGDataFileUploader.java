@@ -16,6 +16,9 @@
 
 package com.google.gdata.client.media;
 
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.gdata.util.common.base.Preconditions;
 import com.google.gdata.data.IEntry;
 import com.google.gdata.data.media.MediaFileSource;
@@ -89,7 +92,42 @@ public class ResumableGDataFileUploader extends ResumableHttpFileUploader {
    */
   public <E extends IEntry> E getResponse(Class<E> entryClass)
       throws IOException, ServiceException {
-    InputStream response = super.getResponse().getInputStream();
+    return parseResponse(super.getResponse(), entryClass);
+  }
+
+  /**
+   * Returns a future that completes with the upload response parsed as an
+   * instance of entryClass, as soon as the upload task ends.  The future
+   * fails with the {@link IOException} or {@link ServiceException} thrown
+   * while parsing the response, and completes with {@code null} if the upload
+   * was paused.
+   *
+   * @param entryClass the class that will be used to represent the resulting
+   *        entry.
+   * @return future of the inserted media Entry returned by the service, or
+   *         {@code null} if the upload hasn't been started.
+   */
+  public <E extends IEntry> ListenableFuture<E> getResponseFuture(
+      final Class<E> entryClass) {
+    ListenableFuture<ResponseMessage> response = getResponseFuture();
+    if (response == null) {
+      return null;
+    }
+    return Futures.transform(response,
+        new AsyncFunction<ResponseMessage, E>() {
+          public ListenableFuture<E> apply(ResponseMessage message)
+              throws IOException, ServiceException {
+            return Futures.immediateFuture(parseResponse(message, entryClass));
+          }
+        });
+  }
+
+  /**
+   * Parses an upload response as an instance of entryClass.
+   */
+  private <E extends IEntry> E parseResponse(ResponseMessage message,
+      Class<E> entryClass) throws IOException, ServiceException {
+    InputStream response = message == null ? null : message.getInputStream();
     if (getUploadState() == UploadState.CLIENT_ERROR) {
       throw new ResumableUploadException("client error");
     } else if (response == null) {
@@ -139,6 +139,9 @@ public class PicasawebService extends MediaService {
    * Declare the extensions of the feeds for the Picasa Web Albums Data API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     extProfile.setAutoExtending(true);
     new AlbumEntry().declareExtensions(extProfile);
     new AlbumFeed().declareExtensions(extProfile);
@@ -148,6 +151,7 @@ public class PicasawebService extends MediaService {
     new TagEntry().declareExtensions(extProfile);
     new UserEntry().declareExtensions(extProfile);
     new UserFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
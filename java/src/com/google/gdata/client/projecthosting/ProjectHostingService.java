@@ -133,9 +133,13 @@ public class ProjectHostingService extends GoogleService {
    * Declare the extensions of the feeds for the Project Hosting GData API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new IssueCommentsFeed().declareExtensions(extProfile);
     new IssuesFeed().declareExtensions(extProfile);
     new ProjectsFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
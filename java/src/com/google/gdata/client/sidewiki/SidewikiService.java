@@ -139,8 +139,12 @@ public class SidewikiService extends GoogleService {
    * Declare the extensions of the feeds for the Google Sidewiki Data API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new SidewikiEntryFeed().declareExtensions(extProfile);
     new SidewikiUserFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -166,6 +166,9 @@ public class SitesService extends MediaService {
    * Declare the extensions of the feeds for the Google Sites Data API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new AclFeed().declareExtensions(extProfile);
     new SiteFeed().declareExtensions(extProfile);
     /* Declarations for extensions that need to be handled as specific type
@@ -190,6 +193,7 @@ public class SitesService extends MediaService {
     new WebAttachmentEntry().declareExtensions(extProfile);
     new WebPageEntry().declareExtensions(extProfile);
     BatchUtils.declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
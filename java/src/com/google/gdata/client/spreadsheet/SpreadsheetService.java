@@ -149,12 +149,16 @@ public class SpreadsheetService extends GoogleService {
    * Declare the extensions of the feeds for the Google Spreadsheets service.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new CellFeed().declareExtensions(extProfile);
     new ListFeed().declareExtensions(extProfile);
     new RecordFeed().declareExtensions(extProfile);
     new SpreadsheetFeed().declareExtensions(extProfile);
     new TableFeed().declareExtensions(extProfile);
     new WorksheetFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
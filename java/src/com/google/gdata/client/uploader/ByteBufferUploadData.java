@@ -0,0 +1,107 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An implementation of {@link UploadData} that provides data from a
+ * {@link ByteBuffer}: the bytes between its position and its limit at
+ * construction time.  The buffer may be direct or a memory mapped file (see
+ * {@link #map(File)}), in which case the data is not held on the heap.
+ * <p>
+ * The buffer is not modified; its content must not change during the upload.
+ *
+ * 
+ */
+public class ByteBufferUploadData implements RandomAccessUploadData {
+
+  private final ByteBuffer buffer;
+  private int position;
+
+  /**
+   * Creates an upload data providing the remaining bytes of a buffer.
+   */
+  public ByteBufferUploadData(ByteBuffer buffer) {
+    this.buffer = buffer.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * Creates an upload data providing the content of a file mapped into
+   * memory.  The file must be smaller than 2 GB; larger files can be uploaded
+   * with {@link FileChannelUploadData}.
+   *
+   * @throws IOException if the file can't be mapped.
+   */
+  public static ByteBufferUploadData map(File file) throws IOException {
+    FileChannel channel = new FileInputStream(file).getChannel();
+    try {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large to be mapped: " + file);
+      }
+      return new ByteBufferUploadData(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    } finally {
+      // The mapping remains valid after the channel is closed.
+      channel.close();
+    }
+  }
+
+  public long length() {
+    return buffer.capacity();
+  }
+
+  public synchronized void read(byte[] destination) {
+    read(destination, 0, destination.length);
+  }
+
+  public synchronized int read(byte[] chunk, int i, int length) {
+    int numRead = read(position, ByteBuffer.wrap(chunk, i, length));
+    if (numRead > 0) {
+      position += numRead;
+    }
+    return numRead;
+  }
+
+  public int read(long position, ByteBuffer destination) {
+    int capacity = buffer.capacity();
+    if (position >= capacity) {
+      return -1;
+    }
+    int numRead = (int) Math.min(destination.remaining(), capacity - position);
+
+    // Read through a duplicate, whose position and limit are not shared with
+    // concurrent readers.
+    ByteBuffer source = buffer.duplicate();
+    source.position((int) position);
+    source.limit((int) position + numRead);
+    destination.put(source);
+    return numRead;
+  }
+
+  public synchronized void setPosition(long position) throws IOException {
+    if (position < 0 || position > buffer.capacity()) {
+      throw new IOException("Invalid position: " + position);
+    }
+    this.position = (int) position;
+  }
+}
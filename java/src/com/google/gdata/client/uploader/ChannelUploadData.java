@@ -0,0 +1,111 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An implementation of {@link UploadData} that provides data from a
+ * {@link ReadableByteChannel} of known length, such as a pipe or a socket.
+ * A channel can't be rewound: {@link #setPosition(long)} can only skip
+ * forward, so an upload from a channel can only be resumed from a position
+ * that hasn't been read yet, and it doesn't support concurrent chunk uploads
+ * (see {@link ResumableHttpFileUploader.Builder#setMaxConcurrentChunks}).
+ *
+ * 
+ */
+public class ChannelUploadData implements UploadData, Closeable {
+
+  private final ReadableByteChannel channel;
+  private final long length;
+  private long position;
+
+  /**
+   * Creates an upload data reading {@code length} bytes from a channel.  The
+   * channel is closed by {@link #close()}.
+   */
+  public ChannelUploadData(ReadableByteChannel channel, long length) {
+    if (channel == null) {
+      throw new NullPointerException("channel");
+    }
+    if (length < 0) {
+      throw new IllegalArgumentException("Invalid length: " + length);
+    }
+    this.channel = channel;
+    this.length = length;
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public synchronized void read(byte[] destination) throws IOException {
+    read(destination, 0, destination.length);
+  }
+
+  public synchronized int read(byte[] chunk, int i, int length)
+      throws IOException {
+    if (position >= this.length) {
+      return -1;
+    }
+    int numToRead = (int) Math.min(length, this.length - position);
+    int numRead = channel.read(ByteBuffer.wrap(chunk, i, numToRead));
+    if (numRead > 0) {
+      position += numRead;
+    }
+    return numRead;
+  }
+
+  /**
+   * Skips forward to a position.
+   *
+   * @throws IOException if the position is before the current position or
+   *     past the end of the data, or if the channel could not be read.
+   */
+  public synchronized void setPosition(long position) throws IOException {
+    if (position < this.position || position > length) {
+      throw new IOException("Invalid position: " + position
+          + " (channel at " + this.position + ")");
+    }
+    ByteBuffer skipBuffer = null;
+    while (this.position < position) {
+      if (skipBuffer == null) {
+        skipBuffer = ByteBuffer.allocate(
+            (int) Math.min(position - this.position, 65536));
+      }
+      skipBuffer.clear();
+      if (skipBuffer.remaining() > position - this.position) {
+        skipBuffer.limit((int) (position - this.position));
+      }
+      int numRead = channel.read(skipBuffer);
+      if (numRead < 0) {
+        throw new IOException("Channel ended at " + this.position);
+      }
+      this.position += numRead;
+    }
+  }
+
+  /**
+   * Closes the channel.
+   */
+  public void close() throws IOException {
+    channel.close();
+  }
+}
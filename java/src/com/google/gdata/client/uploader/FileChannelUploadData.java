@@ -0,0 +1,114 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An implementation of {@link UploadData} that provides data from a
+ * {@link FileChannel}.  All reads are positional reads on the channel, so
+ * {@link #setPosition(long)} doesn't reopen or seek the file and concurrent
+ * chunk uploads share the channel.
+ * <p>
+ * The channel should be closed with {@link #close()} once the upload is
+ * complete.
+ *
+ * 
+ */
+public class FileChannelUploadData implements RandomAccessUploadData,
+    Closeable {
+
+  private final FileChannel channel;
+  private final long length;
+  private long position;
+
+  /**
+   * Creates an upload data reading a file.
+   *
+   * @throws IOException if the file can't be opened.
+   */
+  public FileChannelUploadData(File file) throws IOException {
+    this(new FileInputStream(file).getChannel());
+  }
+
+  /**
+   * Creates an upload data reading a channel, from its start up to its size
+   * at construction time.  The channel is closed by {@link #close()}.
+   *
+   * @throws IOException if the size of the channel can't be read.
+   */
+  public FileChannelUploadData(FileChannel channel) throws IOException {
+    if (channel == null) {
+      throw new NullPointerException("channel");
+    }
+    this.channel = channel;
+    this.length = channel.size();
+  }
+
+  public long length() {
+    return length;
+  }
+
+  public synchronized void read(byte[] destination) throws IOException {
+    read(destination, 0, destination.length);
+  }
+
+  public synchronized int read(byte[] chunk, int i, int length)
+      throws IOException {
+    int numRead = read(position, ByteBuffer.wrap(chunk, i, length));
+    if (numRead > 0) {
+      position += numRead;
+    }
+    return numRead;
+  }
+
+  public int read(long position, ByteBuffer destination) throws IOException {
+    if (position >= length) {
+      return -1;
+    }
+    if (destination.remaining() > length - position) {
+      // Don't read past the length the upload was started with.
+      ByteBuffer limited = destination.slice();
+      limited.limit((int) (length - position));
+      int numRead = channel.read(limited, position);
+      if (numRead > 0) {
+        destination.position(destination.position() + numRead);
+      }
+      return numRead;
+    }
+    return channel.read(destination, position);
+  }
+
+  public synchronized void setPosition(long position) throws IOException {
+    if (position < 0 || position > length) {
+      throw new IOException("Invalid position: " + position);
+    }
+    this.position = position;
+  }
+
+  /**
+   * Closes the channel.
+   */
+  public void close() throws IOException {
+    channel.close();
+  }
+}
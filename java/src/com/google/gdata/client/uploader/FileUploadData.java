@@ -67,4 +67,11 @@ public class FileUploadData implements UploadData {
   public String getFileName() {
     return file.getName();
   }
+
+  /**
+   * Gets the file providing the data.
+   */
+  File getFile() {
+    return file;
+  }
 }
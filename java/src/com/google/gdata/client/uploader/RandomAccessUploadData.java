@@ -0,0 +1,44 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link UploadData} that supports reads at explicit positions, which
+ * neither use nor change the current position.  Positional reads may be
+ * called concurrently, allowing several chunks of the data to be uploaded at
+ * the same time without copying it.
+ *
+ * 
+ */
+public interface RandomAccessUploadData extends UploadData {
+
+  /**
+   * Reads up to {@code destination.remaining()} bytes starting at
+   * {@code position} into the destination buffer.
+   *
+   * @param position offset from the start of the data of the first byte to
+   *     read.
+   * @param destination buffer receiving the bytes.
+   * @return the number of bytes read, or {@code -1} if {@code position} is at
+   *     or past the end of the data.
+   * @throws IOException if the data could not be read.
+   */
+  public int read(long position, ByteBuffer destination) throws IOException;
+}
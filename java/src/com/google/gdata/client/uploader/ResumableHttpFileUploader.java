@@ -16,6 +16,12 @@
 
 package com.google.gdata.client.uploader;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.gdata.util.ContentType;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,8 +35,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Uploads a file using resumable HTTP requests (see {@linkplain
@@ -57,13 +65,50 @@ public class ResumableHttpFileUploader {
    * by the HTTP connection. Note that the input stream might not be ready yet
    * to read from when the upload task is finished. The connection might still
    * be receiving the message body.
+   * <p>
+   * The body can be read once from the input stream, or received with
+   * {@link #receiveMessage()} or {@link #receiveBody()}, which keep it so that
+   * it can be received again.
    */
   public static class ResponseMessage {
+
+    /**
+     * Executes {@link #receiveMessage(long)}: an unbounded pool of daemon
+     * threads that are discarded after being idle for a minute.
+     */
+    private static final ExecutorService RECEIVE_EXECUTOR =
+        Executors.newCachedThreadPool(new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r,
+                "gdata-upload-response-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+
     private final int contentLength;
+    private final String contentType;
     private final InputStream inputStream;
+    private byte[] body;
 
     public ResponseMessage(int contentLength, InputStream inputStream) {
+      this(contentLength, null, inputStream);
+    }
+
+    /**
+     * Constructs a response message.
+     *
+     * @param contentLength value of the Content-Length header, or {@code -1}
+     *        if unknown.
+     * @param contentType value of the Content-Type header, or {@code null}.
+     * @param inputStream stream to read the response body from.
+     */
+    public ResponseMessage(int contentLength, String contentType,
+        InputStream inputStream) {
       this.contentLength = contentLength;
+      this.contentType = contentType;
       this.inputStream = inputStream;
     }
 
@@ -76,6 +121,16 @@ public class ResumableHttpFileUploader {
       return contentLength;
     }
 
+    /**
+     * Returns the value of the Content-Type header of the HTTP response.
+     *
+     * @return the content type of the HTTP response body, or {@code null}
+     *         if unknown.
+     */
+    public String getContentType() {
+      return contentType;
+    }
+
     /**
      * Returns the last request's connection's input stream to read the response
      * body from.
@@ -86,6 +141,53 @@ public class ResumableHttpFileUploader {
       return inputStream;
     }
 
+    /**
+     * Receives the entire response message body, blocking until it has been
+     * read, and closes the input stream.  The body is kept, so further calls
+     * return it without reading the stream.
+     *
+     * @return the response body.
+     * @throws IOException if the body could not be read.
+     */
+    public synchronized byte[] receiveBody() throws IOException {
+      if (body == null) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+            contentLength > 0 ? contentLength : 1024);
+        try {
+          byte[] buf = new byte[8192];
+          int numRead;
+          while ((contentLength < 0 || out.size() < contentLength)
+              && (numRead = inputStream.read(buf)) != -1) {
+            out.write(buf, 0, numRead);
+          }
+        } finally {
+          inputStream.close();
+        }
+        body = out.toByteArray();
+      }
+      return body;
+    }
+
+    /**
+     * Receives the entire response message body, blocking until it has been
+     * read, and returns it as a string decoded with the charset of the
+     * response content type (UTF-8 by default).
+     *
+     * @return the full message body as a string.
+     * @throws IOException if the body could not be read.
+     */
+    public String receiveMessage() throws IOException {
+      String charset = null;
+      if (contentType != null) {
+        try {
+          charset = new ContentType(contentType).getCharset();
+        } catch (IllegalArgumentException e) {
+          // Invalid content type, use the default charset.
+        }
+      }
+      return new String(receiveBody(), charset != null ? charset : "UTF-8");
+    }
+
     /**
      * Attempts to receive the entire outstanding response message body and
      * returns it as a string.
@@ -100,25 +202,18 @@ public class ResumableHttpFileUploader {
      */
     public String receiveMessage(long timeoutMs) throws InterruptedException,
         ExecutionException, TimeoutException {
-      return Executors.newSingleThreadExecutor().submit(
+      Future<String> message = RECEIVE_EXECUTOR.submit(
           new Callable<String>() {
-
-            public String call() throws Exception {
-              int received = 0;
-              StringBuilder message = new StringBuilder();
-              while (received < contentLength) {
-                int avail = inputStream.available();
-                if (avail > 0) {
-                  byte[] buf = new byte[avail];
-                  received += inputStream.read(buf, 0, avail);
-                  message.append(new String(buf));
-                } else {
-                  Thread.sleep(10L);
-                }
-              }
-              return message.toString();
+            public String call() throws IOException {
+              return receiveMessage();
             }
-          }).get(timeoutMs, TimeUnit.MILLISECONDS);
+          });
+      try {
+        return message.get(timeoutMs, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        message.cancel(true);
+        throw e;
+      }
     }
   }
 
@@ -195,7 +290,7 @@ public class ResumableHttpFileUploader {
    * The future which will contain the eventual response stream from the upload
    * server.
    */
-  private Future<ResponseMessage> uploadResultFuture;
+  private volatile ListenableFuture<ResponseMessage> uploadResultFuture;
 
   /**
    * The file to upload.
@@ -203,9 +298,10 @@ public class ResumableHttpFileUploader {
   private final UploadData data;
 
   /**
-   * The URL which locates the destination of the upload.
+   * The URL which locates the destination of the upload.  Volatile since
+   * concurrent chunk uploads may update it.
    */
-  private URL url;
+  private volatile URL url;
 
   /**
    * HTTP request method to use when uploading.
@@ -225,7 +321,7 @@ public class ResumableHttpFileUploader {
   /**
    * Executor service to execute asynchronous upload tasks.
    */
-  private final ExecutorService executor;
+  private final ListeningExecutorService executor;
 
   /**
    * Factory for creating HTTP connections.
@@ -248,6 +344,11 @@ public class ResumableHttpFileUploader {
    */
   private final long chunkSize;
 
+  /**
+   * Maximum number of chunks uploaded concurrently.
+   */
+  private final int maxConcurrentChunks;
+
   /**
    * Back off policy which determines the amount of time to wait before retrying
    * an HTTP request.
@@ -265,6 +366,7 @@ public class ResumableHttpFileUploader {
         UrlConnectionFactory.DEFAULT;
     private ProgressListener progressListener;
     private long chunkSize = DEFAULT_MAX_CHUNK_SIZE;
+    private int maxConcurrentChunks = 1;
     private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MS;
     private RequestMethod requestMethod = RequestMethod.PUT;
     private BackoffPolicy backoffPolicy = BackoffPolicy.DEFAULT;
@@ -339,6 +441,22 @@ public class ResumableHttpFileUploader {
       return this;
     }
 
+    /**
+     * Sets the maximum number of chunks uploaded concurrently, each by its own
+     * HTTP request.  With more than one chunk in flight, the uploader doesn't
+     * wait for the response to a chunk before sending the next ones, which
+     * keeps high latency links busy; the upload server must accept chunks
+     * received out of order.  Uploads resume from the end of the contiguous
+     * range of bytes acknowledged by the server.  Defaults to {@code 1}.
+     *
+     * @param maxConcurrentChunks maximum number of chunk requests in flight
+     * @return this
+     */
+    public Builder setMaxConcurrentChunks(int maxConcurrentChunks) {
+      this.maxConcurrentChunks = maxConcurrentChunks;
+      return this;
+    }
+
     /**
      * @param progressIntervalMillis number of milliseconds between
      *     progress listener notifications
@@ -445,11 +563,13 @@ public class ResumableHttpFileUploader {
   ResumableHttpFileUploader(Builder builder) throws IOException  {
     url = builder.url;
     data = builder.data;
-    executor = builder.executor;
+    executor = builder.executor == null
+        ? null : MoreExecutors.listeningDecorator(builder.executor);
     urlConnectionFactory = builder.urlConnectionFactory;
     progressListener = builder.progressListener;
     progressIntervalMillis = Math.max(0, builder.progressIntervalMillis);
     chunkSize = builder.chunkSize;
+    maxConcurrentChunks = builder.maxConcurrentChunks;
     httpRequestMethod = builder.requestMethod;
     backoffPolicy =  builder.backoffPolicy;
 
@@ -466,6 +586,9 @@ public class ResumableHttpFileUploader {
     // Ensure non-null factories.
     checkArgument(urlConnectionFactory != null, "Factories must be non-null.");
 
+    checkArgument(maxConcurrentChunks > 0,
+        "The maximum number of concurrent chunks must be positive.");
+
     // Add method override if using POST.
     if (RequestMethod.POST.equals(httpRequestMethod)) {
       addHeader(METHOD_OVERRIDE, RequestMethod.PUT.toString());
@@ -625,6 +748,21 @@ public class ResumableHttpFileUploader {
     return uploadResultFuture;
   }
 
+  /**
+   * Returns the future of the current upload task, which completes with the
+   * response to the request that completed the upload, or with
+   * <code>null</code> if the upload was paused or failed.  Listeners added to
+   * the future are notified as soon as the task ends, without polling.  Each
+   * call to {@link #start()} or {@link #resume()} starts a new task with a new
+   * future.
+   *
+   * @return future of the current upload task, or <code>null</code> if the
+   *     upload hasn't been started
+   */
+  public ListenableFuture<ResponseMessage> getResponseFuture() {
+    return uploadResultFuture;
+  }
+
   /**
    * Identifies if the upload task has completed
    *
@@ -678,6 +816,15 @@ public class ResumableHttpFileUploader {
     return chunkSize;
   }
 
+  /**
+   * Gets the maximum number of chunks uploaded concurrently.
+   *
+   * @return maximum number of concurrent chunk requests
+   */
+  int getMaxConcurrentChunks() {
+    return maxConcurrentChunks;
+  }
+
   /**
    * Sends a progress notification to the progress listener if one has been
    * specified.
@@ -19,12 +19,21 @@ package com.google.gdata.client.uploader;
 import com.google.gdata.client.uploader.ResumableHttpFileUploader.ResponseMessage;
 import com.google.gdata.client.uploader.ResumableHttpFileUploader.UploadState;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,6 +72,26 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    */
   private static final String CONTENT_RANGE_HEADER_NAME = "Content-Range";
 
+  /**
+   * Size of the buffer used to copy the data to upload (64 KB).
+   */
+  private static final int BUFFER_SIZE = 65536;
+
+  /**
+   * Creates the daemon threads uploading concurrent chunks.
+   */
+  private static final ThreadFactory CHUNK_THREAD_FACTORY =
+      new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+          Thread thread =
+              new Thread(r, "gdata-upload-chunk-" + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      };
+
   /**
    * Constructs an upload task.
    *
@@ -116,6 +145,22 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    * @return the byte index beginning where the server has yet to receive data
    */
   private long getNextByteIndexFromRangeHeader(String rangeHeader) {
+    long nextByteIndex = parseRangeHeader(rangeHeader);
+    if (nextByteIndex > 0) {
+      uploader.setNumBytesUploaded(nextByteIndex);
+    }
+    return nextByteIndex;
+  }
+
+  /**
+   * Parses an HTTP Range header like {@link #getNextByteIndexFromRangeHeader}
+   * without updating the number of bytes uploaded, as is needed while other
+   * chunks are still being sent.
+   *
+   * @param rangeHeader in the server response
+   * @return the byte index beginning where the server has yet to receive data
+   */
+  private static long parseRangeHeader(String rangeHeader) {
     if (rangeHeader == null || rangeHeader.indexOf('-') == -1) {
 
       // No valid range header, start from the beginning of the file.
@@ -141,7 +186,6 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
 
       // Return the next byte index after the end of the range.
       long lastByteIndex = Long.parseLong(rangeParts[1]);
-      uploader.setNumBytesUploaded(lastByteIndex + 1);
       return  lastByteIndex + 1;
     } catch (NumberFormatException e) {
       return 0L;
@@ -189,6 +233,11 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    * @throws IOException if no connection can be made to the server
    */
   private ResponseMessage upload() throws IOException {
+    if (uploader.getMaxConcurrentChunks() > 1
+        && uploader.getData().length() > uploader.getChunkSize()) {
+      return uploadConcurrently();
+    }
+
     long start = resume ? getNextStartByteFromServer() : 0L;
 
     while (uploader.getUploadState().equals(UploadState.IN_PROGRESS)) {
@@ -266,7 +315,7 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
             uploader.sendCompletionNotification();
             uploader.getBackoffPolicy().reset();
             return new ResponseMessage(connection.getContentLength(),
-                connection.getInputStream());
+                connection.getContentType(), connection.getInputStream());
         }
       } catch (ServerException e) {
 
@@ -285,6 +334,408 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
     return null;
   }
 
+  /**
+   * Uploads the data with up to {@link ResumableHttpFileUploader
+   * #getMaxConcurrentChunks()} chunk requests in flight.  The committed
+   * offset is taken from the Range header of each 308 response, so a chunk
+   * only counts as stored once the server reports a range covering it.  If
+   * the server reports an offset below the end of a chunk, it does not keep
+   * data sent ahead of its committed offset: the remaining chunks are then
+   * sent one at a time from that offset.  When a chunk fails, no further
+   * chunk is sent; once the chunks in flight complete, the offset at which
+   * to continue is requested from the server, and uploading resumes from
+   * there.
+   *
+   * @return the response to the request that completed the upload, or
+   *     <code>null</code> if the upload was paused or failed
+   * @throws IOException if the HTTP request cannot be made
+   */
+  private ResponseMessage uploadConcurrently() throws IOException {
+    int maxConcurrentChunks = uploader.getMaxConcurrentChunks();
+    long length = uploader.getData().length();
+    long committed = resume ? getNextStartByteFromServer() : 0L;
+    uploader.setNumBytesUploaded(committed);
+
+    // Whether the server rejected a chunk sent ahead of its committed offset.
+    boolean sequential = false;
+
+    ExecutorService chunkExecutor =
+        Executors.newFixedThreadPool(maxConcurrentChunks, CHUNK_THREAD_FACTORY);
+    RandomAccessUploadData randomAccessData = openRandomAccessData();
+    try {
+      while (uploader.getUploadState().equals(UploadState.IN_PROGRESS)) {
+        CompletionService<ChunkResult> completionService =
+            new ExecutorCompletionService<ChunkResult>(chunkExecutor);
+
+        long next = committed;
+        int inFlight = 0;
+        boolean failed = false;
+        boolean notStored = false;
+        boolean connectionError = false;
+        boolean serviceUnavailable = false;
+
+        while (true) {
+          while (!failed && !uploader.isPaused()
+              && inFlight < (sequential ? 1 : maxConcurrentChunks)
+              && next < length) {
+            long chunkLength = Math.min(length - next, uploader.getChunkSize());
+            completionService.submit(
+                new ChunkUpload(randomAccessData, next, chunkLength));
+            next += chunkLength;
+            inFlight++;
+          }
+          if (inFlight == 0) {
+            break;
+          }
+
+          ChunkResult result;
+          try {
+            result = completionService.take().get();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            uploader.setUploadState(UploadState.CLIENT_ERROR);
+            return null;
+          } catch (ExecutionException e) {
+            uploader.setUploadState(UploadState.CLIENT_ERROR);
+            return null;
+          }
+          inFlight--;
+
+          switch (result.status) {
+            case ACKNOWLEDGED:
+              committed = Math.max(committed, result.committed);
+              uploader.getBackoffPolicy().reset();
+              break;
+            case NOT_STORED:
+
+              // Only count the part of the chunk the server kept, and stop
+              // sending chunks ahead of its committed offset.
+              long end = result.start + result.length;
+              uploader.addNumBytesUploaded(
+                  Math.max(result.start, result.committed) - end);
+              if (result.committed > committed) {
+                committed = result.committed;
+                uploader.getBackoffPolicy().reset();
+              } else if (sequential) {
+
+                // Even the chunk at the committed offset was not stored:
+                // back off as for a 503 rather than resend it at once.
+                serviceUnavailable = true;
+              }
+              sequential = true;
+              notStored = true;
+              failed = true;
+              break;
+            case COMPLETE:
+              uploader.setUploadState(UploadState.COMPLETE);
+              uploader.sendCompletionNotification();
+              uploader.getBackoffPolicy().reset();
+              return result.response;
+            case SERVICE_UNAVAILABLE:
+              serviceUnavailable = true;
+              failed = true;
+              break;
+            case CONNECTION_ERROR:
+              connectionError = true;
+              failed = true;
+              break;
+            case CLIENT_ERROR:
+              uploader.setUploadState(UploadState.CLIENT_ERROR);
+              failed = true;
+              break;
+          }
+        }
+
+        if (uploader.isPaused()
+            || !uploader.getUploadState().equals(UploadState.IN_PROGRESS)) {
+          break;
+        }
+
+        if (serviceUnavailable) {
+
+          // Backoff before making another request (pausing the upload if the
+          // backoff has terminated).
+          try {
+            long backoffMs = uploader.getBackoffPolicy().getNextBackoffMs();
+            if (backoffMs == BackoffPolicy.STOP) {
+              uploader.pause();
+              break;
+            }
+            Thread.sleep(backoffMs);
+          } catch (InterruptedException e) {
+
+            // Ignore.
+          }
+        }
+
+        // The server reported its committed offset when it rejected a chunk,
+        // so continue from there.
+        if (notStored && !connectionError && !serviceUnavailable) {
+          uploader.setNumBytesUploaded(committed);
+          continue;
+        }
+
+        // Every chunk was sent, or some failed: request the committed range
+        // from the server, which also returns the final response if the
+        // server received all the data.
+        ChunkResult status = queryUploadStatus(committed);
+        if (status.status == ChunkStatus.COMPLETE) {
+          uploader.setUploadState(UploadState.COMPLETE);
+          uploader.sendCompletionNotification();
+          uploader.getBackoffPolicy().reset();
+          return status.response;
+        }
+        committed = status.start;
+        uploader.setNumBytesUploaded(committed);
+      }
+    } finally {
+      chunkExecutor.shutdownNow();
+      if (randomAccessData != null
+          && randomAccessData != uploader.getData()) {
+        ((FileChannelUploadData) randomAccessData).close();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Makes an HTTP request for the status of the upload.
+   *
+   * @param committed offset of the first byte not yet acknowledged, used if
+   *     the server fails to answer
+   * @return an {@link ChunkStatus#ACKNOWLEDGED} result starting at the
+   *     offset from which to continue the upload, or a
+   *     {@link ChunkStatus#COMPLETE} result holding the final response
+   * @throws IOException if the HTTP request cannot be made
+   */
+  private ChunkResult queryUploadStatus(long committed) throws IOException {
+    HttpURLConnection connection =
+        urlConnectionFactory.create(uploader.getUrl());
+    connection.setRequestMethod(uploader.getHttpRequestMethod().toString());
+    connection.setRequestProperty(CONTENT_LENGTH_HEADER_NAME, "0");
+    connection.setRequestProperty(CONTENT_RANGE_HEADER_NAME,
+        "bytes */" + uploader.getData().length());
+    for (Map.Entry<String, String> header : uploader.getHeaders().entrySet()) {
+      connection.setRequestProperty(header.getKey(), header.getValue());
+    }
+    connection.connect();
+
+    int responseCode = connection.getResponseCode();
+    if (responseCode == 308) {
+      return new ChunkResult(ChunkStatus.ACKNOWLEDGED,
+          getNextByteIndexFromRangeHeader(connection.getHeaderField("Range")),
+          0, null);
+    }
+    if (responseCode >= 500) {
+      return new ChunkResult(ChunkStatus.ACKNOWLEDGED, committed, 0, null);
+    }
+    return new ChunkResult(ChunkStatus.COMPLETE, 0, 0, new ResponseMessage(
+        connection.getContentLength(), connection.getContentType(),
+        connection.getInputStream()));
+  }
+
+  /**
+   * Returns a view of the data to upload that allows concurrent reads at
+   * independent positions: the data itself if it is a
+   * {@link RandomAccessUploadData}, or a {@link FileChannelUploadData} on the
+   * file of a {@link FileUploadData}.
+   *
+   * @return the data, or <code>null</code> if it only supports sequential
+   *     reads
+   * @throws IOException if the file cannot be opened
+   */
+  private RandomAccessUploadData openRandomAccessData() throws IOException {
+    UploadData uploadData = uploader.getData();
+    if (uploadData instanceof RandomAccessUploadData) {
+      return (RandomAccessUploadData) uploadData;
+    }
+    if (uploadData instanceof FileUploadData) {
+      return new FileChannelUploadData(
+          ((FileUploadData) uploadData).getFile());
+    }
+    return null;
+  }
+
+  /**
+   * Writes the byte range beginning at <code>start</code> and ending at
+   * <code>start + length - 1</code> inclusive to the output stream, checking
+   * before each 64 KB write if the uploader has been paused.  Unlike
+   * {@link #writeSlice}, several ranges can be written concurrently: the data
+   * is read from <code>randomAccessData</code> at explicit positions, or
+   * otherwise from the {@link UploadData} one buffer at a time.
+   *
+   * @param randomAccessData data to upload supporting positional reads, or
+   *     <code>null</code>
+   * @param start byte index from which to begin sending data
+   * @param length of the byte range to send
+   * @param out stream to write the range to
+   * @return <code>false</code> if the uploader was paused before the whole
+   *     range was written
+   * @throws IOException if the data cannot be read
+   * @throws ServerException if the connection to the server is broken
+   */
+  private boolean writeRange(RandomAccessUploadData randomAccessData,
+      long start, long length, OutputStream out)
+      throws IOException, ServerException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    long position = start;
+    long end = start + length;
+    while (position < end) {
+      if (uploader.isPaused()) {
+        return false;
+      }
+
+      int numToRead = (int) Math.min(buffer.length, end - position);
+      int numRead;
+      if (randomAccessData != null) {
+        byteBuffer.clear();
+        byteBuffer.limit(numToRead);
+        numRead = randomAccessData.read(position, byteBuffer);
+      } else {
+        UploadData uploadData = uploader.getData();
+        synchronized (uploadData) {
+          uploadData.setPosition(position);
+          numRead = uploadData.read(buffer, 0, numToRead);
+        }
+      }
+      if (numRead < 0) {
+        throw new EOFException("Upload data ended at " + position);
+      }
+
+      try {
+        out.write(buffer, 0, numRead);
+      } catch (IOException e) {
+        throw new ServerException();
+      }
+      position += numRead;
+      uploader.addNumBytesUploaded(numRead);
+    }
+    return true;
+  }
+
+  /**
+   * Status of a chunk upload request.
+   */
+  private enum ChunkStatus {
+    /**
+     * The server stored the chunk and waits for more data (308 with a Range
+     * covering the chunk).
+     */
+    ACKNOWLEDGED,
+    /**
+     * The server did not store the whole chunk (308 with a Range ending
+     * before the end of the chunk).
+     */
+    NOT_STORED,
+    /** The server returned its final response. */
+    COMPLETE,
+    /** The server is temporarily unavailable (503). */
+    SERVICE_UNAVAILABLE,
+    /** The connection to the server failed or the upload was paused. */
+    CONNECTION_ERROR,
+    /** The data to upload could not be read. */
+    CLIENT_ERROR
+  }
+
+  /**
+   * Result of a chunk upload request.
+   */
+  private static class ChunkResult {
+    private final ChunkStatus status;
+    private final long start;
+    private final long length;
+    private final long committed;
+    private final ResponseMessage response;
+
+    private ChunkResult(ChunkStatus status, long start, long length,
+        ResponseMessage response) {
+      this(status, start, length, 0, response);
+    }
+
+    private ChunkResult(ChunkStatus status, long start, long length,
+        long committed, ResponseMessage response) {
+      this.status = status;
+      this.start = start;
+      this.length = length;
+      this.committed = committed;
+      this.response = response;
+    }
+  }
+
+  /**
+   * Uploads a single chunk of the data.
+   */
+  private class ChunkUpload implements Callable<ChunkResult> {
+    private final RandomAccessUploadData randomAccessData;
+    private final long start;
+    private final long length;
+
+    private ChunkUpload(RandomAccessUploadData randomAccessData, long start,
+        long length) {
+      this.randomAccessData = randomAccessData;
+      this.start = start;
+      this.length = length;
+    }
+
+    public ChunkResult call() {
+      HttpURLConnection connection;
+      OutputStream out;
+      try {
+        connection = urlConnectionFactory.create(uploader.getUrl());
+        connection.setDoOutput(true);
+        connection.setDoInput(true);
+        connection.setRequestMethod(uploader.getHttpRequestMethod().toString());
+        setHeaders(connection, start, length);
+        if (length <= Integer.MAX_VALUE) {
+          connection.setFixedLengthStreamingMode((int) length);
+        }
+        out = connection.getOutputStream();
+      } catch (IOException e) {
+        return result(ChunkStatus.CONNECTION_ERROR);
+      }
+
+      try {
+        if (!writeRange(randomAccessData, start, length, out)) {
+          connection.disconnect();
+          return result(ChunkStatus.CONNECTION_ERROR);
+        }
+      } catch (ServerException e) {
+        return result(ChunkStatus.CONNECTION_ERROR);
+      } catch (IOException e) {
+        return result(ChunkStatus.CLIENT_ERROR);
+      }
+
+      try {
+        out.close();
+        switch (connection.getResponseCode()) {
+          case 308:
+            String location = connection.getHeaderField("Location");
+            if (location != null) {
+              uploader.setUrl(new URL(location));
+            }
+            long committed =
+                parseRangeHeader(connection.getHeaderField("Range"));
+            return new ChunkResult(committed >= start + length
+                ? ChunkStatus.ACKNOWLEDGED : ChunkStatus.NOT_STORED,
+                start, length, committed, null);
+          case 503:
+            return result(ChunkStatus.SERVICE_UNAVAILABLE);
+          default:
+            return new ChunkResult(ChunkStatus.COMPLETE, start, length,
+                new ResponseMessage(connection.getContentLength(),
+                    connection.getContentType(), connection.getInputStream()));
+        }
+      } catch (IOException e) {
+        return result(ChunkStatus.CONNECTION_ERROR);
+      }
+    }
+
+    private ChunkResult result(ChunkStatus status) {
+      return new ChunkResult(status, start, length, null);
+    }
+  }
+
   /**
    * Writes the contents of <code>file</code> specified by the byte range
    * beginning at <code>start</code> and ending at
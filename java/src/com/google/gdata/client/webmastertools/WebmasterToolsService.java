@@ -143,11 +143,15 @@ public class WebmasterToolsService extends GoogleService {
    * API.
    */
   private void declareExtensions() {
+    if (useSharedExtensionProfile()) {
+      return;
+    }
     new CrawlIssuesFeed().declareExtensions(extProfile);
     new KeywordsFeed().declareExtensions(extProfile);
     new MessagesFeed().declareExtensions(extProfile);
     new SitemapsFeed().declareExtensions(extProfile);
     new SitesFeed().declareExtensions(extProfile);
+    shareExtensionProfile();
   }
 
 }
@@ -190,6 +190,11 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
   /** Feed entries. */
   protected List<E> entries = new LinkedList<E>();
 
+  /**
+   * Receives parsed entries instead of the entry list, or {@code null}.
+   */
+  private EntryListener<? super E> entryListener;
+
   /**
    * Copy constructor that initializes a new BaseFeed instance to have
    * identical contents to another instance, using a shared reference to
@@ -384,6 +389,26 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
     feedState.itemsPerPage = v;
   }
 
+  /**
+   * Sets the listener that receives the entries of this feed while it is
+   * parsed.  If set, each entry is passed to the listener as soon as it has
+   * been parsed and is not added to the entry list, so memory use does not
+   * grow with the number of entries.  Feed elements that precede the entries
+   * in the document (such as links and OpenSearch totals) have already been
+   * parsed when the listener is called.
+   *
+   * @param entryListener listener receiving parsed entries, or {@code null}
+   *        to collect them in the entry list.
+   */
+  public void setEntryListener(EntryListener<? super E> entryListener) {
+    this.entryListener = entryListener;
+  }
+
+  /** Returns the listener that receives parsed entries, or {@code null}. */
+  public EntryListener<? super E> getEntryListener() {
+    return entryListener;
+  }
+
   /** Returns the list of entries in this feed */
   public List<E> getEntries() {
     return entries;
@@ -413,11 +438,9 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
 
     E entry;
     try {
-      entry = entryClass.newInstance();
-    } catch (InstantiationException e) {
-      throw new IllegalStateException(e);
-    } catch (IllegalAccessException e) {
-      throw new IllegalStateException(e);
+      entry = createExtensionInstance(entryClass);
+    } catch (ParseException e) {
+      throw new IllegalStateException(e.getCause());
     }
 
     // Propagate the associated service (if any)
@@ -937,6 +960,9 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
         if (localName.equals("entry")) {
 
           E entry = createEntry();
+          if (entryListener != null) {
+            return new ListenerEntryHandler(extProfile, entry);
+          }
           entries.add(entry);
           return ((BaseEntry<?>) entry).new AtomHandler(
               extProfile);
@@ -964,6 +990,26 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
     }
 
 
+    /**
+     * {@code <atom:entry>} parser that passes the parsed entry to the entry
+     * listener.
+     */
+    private class ListenerEntryHandler extends BaseEntry<?>.AtomHandler {
+
+      private final E entry;
+
+      private ListenerEntryHandler(ExtensionProfile extProfile, E entry) {
+        ((BaseEntry<?>) entry).super(extProfile);
+        this.entry = entry;
+      }
+
+      @Override
+      public void processEndElement() throws ParseException {
+        super.processEndElement();
+        entryListener.entryParsed(entry);
+      }
+    }
+
     /** {@code <opensearch:totalResults>} parser. */
     private class TotalResultsHandler extends ElementHandler {
 
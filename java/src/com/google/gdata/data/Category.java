@@ -298,6 +298,10 @@ public class Category implements ICategory {
         } catch (Kind.AdaptorException ae) {
           throw new ParseException(
               CoreErrorDomain.ERR.cantLoadKindAdaptor, ae);
+        } catch (IllegalStateException ise) {
+          // The profile is frozen and doesn't declare the kind's extensions.
+          throw new ParseException(
+              CoreErrorDomain.ERR.cantLoadKindAdaptor, ise);
         }
       }
     }
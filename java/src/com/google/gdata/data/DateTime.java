@@ -18,14 +18,12 @@ package com.google.gdata.data;
 
 import com.google.gdata.util.ParseException;
 
-import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
@@ -155,79 +153,69 @@ public class DateTime implements Comparable<Object> {
                     "([Zz]|((\\+|\\-)(\\d\\d):(\\d\\d)))?");
 
 
-  /** RFC 822 date/time format. */
-  private static final SimpleDateFormat dateTimeFormat822 =
-    new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
-
   private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
 
-  static {
-    dateTimeFormat822.setTimeZone(GMT);
-  }
+  /**
+   * RFC 822 date/time format, used for values that the RFC 822 formatter
+   * and parser below don't handle.  {@link SimpleDateFormat} isn't thread
+   * safe, so each thread gets its own instance.
+   */
+  private static final ThreadLocal<SimpleDateFormat> dateTimeFormat822 =
+    new ThreadLocal<SimpleDateFormat>() {
+      @Override
+      protected SimpleDateFormat initialValue() {
+        SimpleDateFormat format = new SimpleDateFormat(
+            "EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+        format.setTimeZone(GMT);
+        return format;
+      }
+    };
+
+  /** RFC 822 day names, indexed by day of week starting on Sunday. */
+  private static final String[] DAY_NAMES_822 =
+    { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+
+  /** RFC 822 month names. */
+  private static final String[] MONTH_NAMES_822 =
+    { "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+      "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
 
 
   /** Formats the value as an xs:date or xs:dateTime string. */
   @Override
   public String toString() {
 
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(dateOnly ? 16 : 29);
 
-    Calendar dateTime = new GregorianCalendar(GMT);
     long localTime = value;
     if (tzShift != null) {
      localTime += tzShift.longValue() * 60000;
     }
 
-    dateTime.setTimeInMillis(localTime);
-
-    try {
-
-      appendInt(sb, dateTime.get(Calendar.YEAR), 4);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.MONTH) + 1, 2);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.DAY_OF_MONTH), 2);
-
-      if (!dateOnly) {
-
-        sb.append('T');
-        appendInt(sb, dateTime.get(Calendar.HOUR_OF_DAY), 2);
-        sb.append(':');
-        appendInt(sb, dateTime.get(Calendar.MINUTE), 2);
-        sb.append(':');
-        appendInt(sb, dateTime.get(Calendar.SECOND), 2);
+    appendLocalTime(sb, localTime, dateOnly, false);
 
-        if (dateTime.isSet(Calendar.MILLISECOND)) {
-          sb.append('.');
-          appendInt(sb, dateTime.get(Calendar.MILLISECOND), 3);
-        }
-      }
+    if (tzShift != null) {
 
-      if (tzShift != null) {
+      if (tzShift.intValue() == 0) {
 
-        if (tzShift.intValue() == 0) {
+        sb.append('Z');
 
-          sb.append('Z');
+      } else {
 
+        int absTzShift = tzShift.intValue();
+        if (tzShift > 0) {
+          sb.append('+');
         } else {
-
-          int absTzShift = tzShift.intValue();
-          if (tzShift > 0) {
-            sb.append('+');
-          } else {
-            sb.append('-');
-            absTzShift = -absTzShift;
-          }
-
-          int tzHours = absTzShift / 60;
-          int tzMinutes = absTzShift % 60;
-          appendInt(sb, tzHours, 2);
-          sb.append(':');
-          appendInt(sb, tzMinutes, 2);
+          sb.append('-');
+          absTzShift = -absTzShift;
         }
+
+        int tzHours = absTzShift / 60;
+        int tzMinutes = absTzShift % 60;
+        appendInt(sb, tzHours, 2);
+        sb.append(':');
+        appendInt(sb, tzMinutes, 2);
       }
-    } catch (ArrayIndexOutOfBoundsException e) {
-      throw new RuntimeException(e);
     }
 
     return sb.toString();
@@ -237,58 +225,140 @@ public class DateTime implements Comparable<Object> {
   /** Formats the value as an RFC 822 date/time. */
   public String toStringRfc822() {
     assert !dateOnly;
-    synchronized (dateTimeFormat822) {
-      return dateTimeFormat822.format(value);
+
+    if (value < MIN_ARITHMETIC_TIME || value >= MAX_ARITHMETIC_TIME) {
+      return dateTimeFormat822.get().format(value);
     }
+
+    long days = floorDiv(value, MILLIS_PER_DAY);
+    int secondOfDay = (int) ((value - days * MILLIS_PER_DAY) / 1000);
+    long date = civilFromDays(days);
+
+    StringBuilder sb = new StringBuilder(31);
+    sb.append(DAY_NAMES_822[dayOfWeek(days)]);
+    sb.append(", ");
+    appendInt(sb, (int) (date & 0x1f), 2);
+    sb.append(' ');
+    sb.append(MONTH_NAMES_822[(int) (date >> 5 & 0xf) - 1]);
+    sb.append(' ');
+    appendInt(sb, (int) (date >> 9), 4);
+    sb.append(' ');
+    appendInt(sb, secondOfDay / 3600, 2);
+    sb.append(':');
+    appendInt(sb, secondOfDay / 60 % 60, 2);
+    sb.append(':');
+    appendInt(sb, secondOfDay % 60, 2);
+    sb.append(" +0000");
+    return sb.toString();
   }
 
   /** Parses the value as an RFC 822 date/time. */
   public static DateTime parseRfc822(String str) throws ParseException {
+
+    DateTime ret = parseRfc1123(str);
+    if (ret != null) {
+      return ret;
+    }
+
     Date date;
-    synchronized (dateTimeFormat822) {
-      try {
-        date = dateTimeFormat822.parse(str);
-      } catch (java.text.ParseException e) {
-        throw new ParseException(e);
-      }
+    try {
+      date = dateTimeFormat822.get().parse(str);
+    } catch (java.text.ParseException e) {
+      throw new ParseException(e);
     }
 
     return new DateTime(date);
   }
 
-  /** Formats the value as a human-readable string. */
-  public String toUiString() {
-
-    StringBuilder sb = new StringBuilder();
+  /**
+   * Parses the canonical RFC 1123 form of an RFC 822 date/time, as in
+   * {@code "Wed, 23 Jul 2008 18:29:41 GMT"} or with a numeric zone such as
+   * {@code "+0000"}.  This is the form written by {@link #toStringRfc822()}
+   * and by HTTP servers.
+   *
+   * @return the parsed value or {@code null} if the string isn't in the
+   *     canonical form, in which case it must go through the lenient
+   *     {@link SimpleDateFormat} parser.
+   */
+  private static DateTime parseRfc1123(String str) {
+
+    int len = str.length();
+    if ((len != 29 && len != 31)
+        || str.charAt(3) != ',' || str.charAt(4) != ' '
+        || str.charAt(7) != ' ' || str.charAt(11) != ' '
+        || str.charAt(16) != ' ' || str.charAt(19) != ':'
+        || str.charAt(22) != ':' || str.charAt(25) != ' ') {
+      return null;
+    }
 
-    Calendar dateTime = new GregorianCalendar(GMT);
-    long localTime = value;
-    if (tzShift != null) {
-     localTime += tzShift.longValue() * 60000;
+    int dayOfWeek = indexOf(DAY_NAMES_822, str, 0);
+    int month = indexOf(MONTH_NAMES_822, str, 8) + 1;
+    int day = parseDigits(str, 5, 2);
+    int year = parseDigits(str, 12, 4);
+    int hour = parseDigits(str, 17, 2);
+    int minute = parseDigits(str, 20, 2);
+    int second = parseDigits(str, 23, 2);
+    if (dayOfWeek < 0 || month == 0 || day < 1 || day > 31
+        || year < MIN_ARITHMETIC_YEAR || hour < 0 || hour > 23
+        || minute < 0 || minute > 59 || second < 0 || second > 59) {
+      return null;
     }
 
-    dateTime.setTimeInMillis(localTime);
+    int tzShift;
+    if (len == 29) {
+      if (!str.regionMatches(26, "GMT", 0, 3)) {
+        return null;
+      }
+      tzShift = 0;
+    } else {
+      char sign = str.charAt(26);
+      int tzHours = parseDigits(str, 27, 2);
+      int tzMinutes = parseDigits(str, 29, 2);
+      if ((sign != '+' && sign != '-')
+          || tzHours < 0 || tzHours > 23 || tzMinutes < 0 || tzMinutes > 59) {
+        return null;
+      }
+      tzShift = tzHours * 60 + tzMinutes;
+      if (sign == '-') {
+        tzShift = -tzShift;
+      }
+    }
 
-    try {
+    // Leave dates that don't exist or don't match the day name to the
+    // lenient parser.
+    long days = daysFromCivil(year, month, day);
+    if (civilFromDays(days) != ((long) year << 9 | month << 5 | day)
+        || dayOfWeek(days) != dayOfWeek) {
+      return null;
+    }
 
-      appendInt(sb, dateTime.get(Calendar.YEAR), 4);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.MONTH) + 1, 2);
-      sb.append('-');
-      appendInt(sb, dateTime.get(Calendar.DAY_OF_MONTH), 2);
+    long value = (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000;
+    return new DateTime(value - tzShift * 60000L);
+  }
 
-      if (!dateOnly) {
 
-        sb.append(' ');
-        appendInt(sb, dateTime.get(Calendar.HOUR_OF_DAY), 2);
-        sb.append(':');
-        appendInt(sb, dateTime.get(Calendar.MINUTE), 2);
+  /** Returns the index of the three letter name found at an offset. */
+  private static int indexOf(String[] names, String str, int offset) {
+    for (int i = 0; i < names.length; i++) {
+      if (str.regionMatches(offset, names[i], 0, 3)) {
+        return i;
       }
+    }
+    return -1;
+  }
+
+  /** Formats the value as a human-readable string. */
+  public String toUiString() {
+
+    StringBuilder sb = new StringBuilder(16);
 
-    } catch (ArrayIndexOutOfBoundsException e) {
-      throw new RuntimeException(e);
+    long localTime = value;
+    if (tzShift != null) {
+     localTime += tzShift.longValue() * 60000;
     }
 
+    appendLocalTime(sb, localTime, dateOnly, true);
+
     return sb.toString();
   }
 
@@ -297,138 +367,326 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDateTime(String str)
       throws NumberFormatException {
 
-    Matcher m = str == null ? null : dateTimePattern.matcher(str);
-
-    if (str == null || !m.matches()) {
+    DateTime ret = parse(str, true, true);
+    if (ret == null) {
       throw new NumberFormatException("Invalid date/time format.");
     }
+    return ret;
+  }
 
-    /* Debugging help:
-    System.out.println("Year: " + m.group(1));
-    System.out.println("Month: " + m.group(2));
-    System.out.println("Day: " + m.group(3));
-    System.out.println("Hour: " + m.group(4));
-    System.out.println("Minute: " + m.group(5));
-    System.out.println("Second: " + m.group(6));
-    System.out.println("Second Fraction: " + m.group(8));
-    System.out.println("TZ: " + m.group(9));
-    System.out.println("TZ Shift: " + m.group(11));
-    System.out.println("TZ Hour: " + m.group(12));
-    System.out.println("TZ Minute: " + m.group(13));
-    */
-
-    DateTime ret = new DateTime();
-    ret.dateOnly = false;
+  /** Parses an xs:date string. */
+  public static DateTime parseDate(String str)
+      throws NumberFormatException {
 
-    if (m.group(9) == null) {
-      // No time zone specified.
-    } else if (m.group(9).equalsIgnoreCase("Z")) {
-      ret.tzShift = new Integer(0);
-    } else {
-      ret.tzShift = new Integer((Integer.valueOf(m.group(12)) * 60 +
-                                 Integer.valueOf(m.group(13))));
-      if (m.group(11).equals("-")) {
-        ret.tzShift = new Integer(-ret.tzShift.intValue());
-      }
+    DateTime ret = parse(str, false, false);
+    if (ret == null) {
+      throw new NumberFormatException("Invalid date format.");
     }
+    return ret;
+  }
 
-    Calendar dateTime = new GregorianCalendar(GMT);
-
-    dateTime.clear();
-    dateTime.set(Integer.valueOf(m.group(1)),
-                 Integer.valueOf(m.group(2)) - 1,
-                 Integer.valueOf(m.group(3)),
-                 Integer.valueOf(m.group(4)),
-                 Integer.valueOf(m.group(5)),
-                 Integer.valueOf(m.group(6)));
-    if (m.group(8) != null && m.group(8).length() > 0) {
-      final BigDecimal bd = new BigDecimal("0." + m.group(8));
-      // we care only for milliseconds, so movePointRight(3)
-      dateTime.set(Calendar.MILLISECOND, bd.movePointRight(3).intValue());
-    }
+  /**
+   * Parses an XML value that's either an xs:date or xs:dateTime string.
+   *
+   * @throws  NumberFormatException
+   *            Invalid RFC 3339 date or date/time string.
+   */
+  public static DateTime parseDateTimeChoice(String value)
+      throws NumberFormatException {
 
-    ret.value = dateTime.getTimeInMillis();
-    if (ret.tzShift != null) {
-      ret.value -= ret.tzShift.intValue() * 60000;
+    DateTime ret = parse(value, true, false);
+    if (ret == null) {
+      throw new NumberFormatException("Invalid date format.");
     }
-
     return ret;
   }
 
-  /** Parses an xs:date string. */
-  public static DateTime parseDate(String str)
-      throws NumberFormatException {
 
-    Matcher m = str == null ? null : datePattern.matcher(str);
+  /** Number of milliseconds in a day. */
+  private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
 
-    if (str == null || !m.matches()) {
-      throw new NumberFormatException("Invalid date format.");
+  /**
+   * First year handled by the arithmetic below.  Earlier dates go through
+   * {@link GregorianCalendar}, which switches to the Julian calendar before
+   * October 1582.
+   */
+  private static final int MIN_ARITHMETIC_YEAR = 1600;
+
+  /** Start of {@link #MIN_ARITHMETIC_YEAR}, in ms since the Unix epoch. */
+  private static final long MIN_ARITHMETIC_TIME =
+      daysFromCivil(MIN_ARITHMETIC_YEAR, 1, 1) * MILLIS_PER_DAY;
+
+  /**
+   * Start of year 10000, in ms since the Unix epoch.  Later values don't fit
+   * the four digit years of the RFC 822 format.
+   */
+  private static final long MAX_ARITHMETIC_TIME =
+      daysFromCivil(10000, 1, 1) * MILLIS_PER_DAY;
+
+
+  /**
+   * Parses an xs:date or xs:dateTime string.  Accepts the same syntax as
+   * {@link #dateTimeChoicePattern} and computes the same value as a lenient
+   * {@link GregorianCalendar}, without the regular expression match or the
+   * calendar.
+   *
+   * @param str string to parse.
+   * @param allowTime whether the string may contain a time.
+   * @param requireTime whether the string must contain a time.
+   * @return the parsed value or {@code null} if the string is invalid.
+   */
+  private static DateTime parse(String str, boolean allowTime,
+      boolean requireTime) {
+
+    if (str == null) {
+      return null;
     }
 
-    /* Debugging help:
-    System.out.println("Year: " + m.group(1));
-    System.out.println("Month: " + m.group(2));
-    System.out.println("Day: " + m.group(3));
-    System.out.println("TZ: " + m.group(4));
-    System.out.println("TZ Shift: " + m.group(6));
-    System.out.println("TZ Hour: " + m.group(7));
-    System.out.println("TZ Minute: " + m.group(8));
-    */
+    int len = str.length();
+    if (len < 10 || str.charAt(4) != '-' || str.charAt(7) != '-') {
+      return null;
+    }
+    int year = parseDigits(str, 0, 4);
+    int month = parseDigits(str, 5, 2);
+    int day = parseDigits(str, 8, 2);
+    if ((year | month | day) < 0) {
+      return null;
+    }
 
-    DateTime ret = new DateTime();
-    ret.dateOnly = true;
+    int pos = 10;
+    boolean hasTime =
+        pos < len && (str.charAt(pos) == 'T' || str.charAt(pos) == 't');
+    if (hasTime ? !allowTime : requireTime) {
+      return null;
+    }
 
-    if (m.group(4) == null) {
-      // No time zone specified.
-    } else if (m.group(4).equalsIgnoreCase("Z")) {
-      ret.tzShift = new Integer(0);
-    } else {
-      ret.tzShift = new Integer((Integer.valueOf(m.group(7)) * 60 +
-                                 Integer.valueOf(m.group(8))));
-      if (m.group(6).equals("-")) {
-        ret.tzShift = new Integer(-ret.tzShift.intValue());
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millis = 0;
+    if (hasTime) {
+      if (len < pos + 9
+          || str.charAt(pos + 3) != ':' || str.charAt(pos + 6) != ':') {
+        return null;
+      }
+      hour = parseDigits(str, pos + 1, 2);
+      minute = parseDigits(str, pos + 4, 2);
+      second = parseDigits(str, pos + 7, 2);
+      if ((hour | minute | second) < 0) {
+        return null;
+      }
+      pos += 9;
+
+      // Only milliseconds are kept; further digits are truncated.
+      if (pos < len && str.charAt(pos) == '.') {
+        int start = ++pos;
+        while (pos < len && isDigit(str.charAt(pos))) {
+          if (pos - start < 3) {
+            millis = millis * 10 + (str.charAt(pos) - '0');
+          }
+          pos++;
+        }
+        if (pos == start) {
+          return null;
+        }
+        for (int digits = pos - start; digits < 3; digits++) {
+          millis *= 10;
+        }
       }
     }
 
-    Calendar dateTime = new GregorianCalendar(GMT);
-
-    dateTime.clear();
-    dateTime.set(Integer.valueOf(m.group(1)),
-                 Integer.valueOf(m.group(2)) - 1,
-                 Integer.valueOf(m.group(3)));
+    Integer tzShift = null;
+    if (pos < len) {
+      char c = str.charAt(pos);
+      if ((c == 'Z' || c == 'z') && pos + 1 == len) {
+        tzShift = 0;
+      } else if ((c == '+' || c == '-') && pos + 6 == len
+          && str.charAt(pos + 3) == ':') {
+        int tzHours = parseDigits(str, pos + 1, 2);
+        int tzMinutes = parseDigits(str, pos + 4, 2);
+        if ((tzHours | tzMinutes) < 0) {
+          return null;
+        }
+        int shift = tzHours * 60 + tzMinutes;
+        tzShift = c == '-' ? -shift : shift;
+      } else {
+        return null;
+      }
+    }
 
-    ret.value = dateTime.getTimeInMillis();
-    if (ret.tzShift != null) {
-      ret.value -= ret.tzShift.intValue() * 60000;
+    DateTime ret = new DateTime();
+    ret.dateOnly = !hasTime;
+    ret.tzShift = tzShift;
+    ret.value = toMillis(year, month, day, hour, minute, second, millis);
+    if (tzShift != null) {
+      ret.value -= tzShift.intValue() * 60000;
     }
 
     return ret;
   }
 
+
   /**
-   * Parses an XML value that's either an xs:date or xs:dateTime string.
+   * Parses a fixed number of ASCII digits.
    *
-   * @throws  NumberFormatException
-   *            Invalid RFC 3339 date or date/time string.
+   * @return the parsed value or {@code -1} if a character isn't a digit.
    */
-  public static DateTime parseDateTimeChoice(String value)
-      throws NumberFormatException {
+  private static int parseDigits(String str, int start, int numDigits) {
+    int num = 0;
+    for (int i = start; i < start + numDigits; i++) {
+      char c = str.charAt(i);
+      if (!isDigit(c)) {
+        return -1;
+      }
+      num = num * 10 + (c - '0');
+    }
+    return num;
+  }
 
-    NumberFormatException exception;
 
-    try {
-      return DateTime.parseDateTime(value);
-    } catch (NumberFormatException e) {
-      exception = e;
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+
+  /**
+   * Converts UTC date and time fields to ms since the Unix epoch.  Like a
+   * lenient calendar, out of range months, days and times carry over into
+   * the next larger field.
+   */
+  private static long toMillis(int year, int month, int day,
+      int hour, int minute, int second, int millis) {
+
+    int y = year;
+    int m = month - 1;
+    if (m < 0) {
+      y--;
+      m += 12;
+    }
+    y += m / 12;
+    m = m % 12 + 1;
+
+    if (y < MIN_ARITHMETIC_YEAR) {
+      Calendar dateTime = new GregorianCalendar(GMT);
+      dateTime.clear();
+      dateTime.set(year, month - 1, day, hour, minute, second);
+      dateTime.set(Calendar.MILLISECOND, millis);
+      return dateTime.getTimeInMillis();
     }
 
-    try {
-      return DateTime.parseDate(value);
-    } catch (NumberFormatException e) {
-      exception = e;
+    long days = daysFromCivil(y, m, 1) + day - 1;
+    return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+  }
+
+
+  /**
+   * Returns the number of days from the Unix epoch to a date of the
+   * proleptic Gregorian calendar, for a non-negative year and a month in
+   * {@code 1..12}.
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = y / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5
+        + day - 1;
+    int dayOfEra =
+        yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+
+  /**
+   * Returns the date of the proleptic Gregorian calendar for a number of
+   * days since the Unix epoch, for dates from year 0 on.  The date is packed
+   * as {@code year << 9 | month << 5 | day}.
+   */
+  private static long civilFromDays(long days) {
+    long z = days + 719468;
+    long era = z / 146097;
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+        - dayOfEra / 146096) / 365;
+    int dayOfYear =
+        dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    return year << 9 | month << 5 | day;
+  }
+
+
+  /** Returns the day of week, starting at 0 for Sunday. */
+  private static int dayOfWeek(long days) {
+    // The Unix epoch was a Thursday.
+    return (int) (days - floorDiv(days + 4, 7) * 7 + 4);
+  }
+
+
+  /** Divides, rounding towards negative infinity. */
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y < 0) ? q - 1 : q;
+  }
+
+
+  /**
+   * Appends the date and, unless {@code dateOnly} is set, the time of a
+   * local time value.  The time is formatted as {@code "THH:mm:ss.SSS"}, or
+   * as {@code " HH:mm"} if {@code uiFormat} is set.
+   */
+  private static void appendLocalTime(StringBuilder sb, long localTime,
+      boolean dateOnly, boolean uiFormat) {
+
+    int year;
+    int month;
+    int day;
+    int millisOfDay;
+
+    if (localTime >= MIN_ARITHMETIC_TIME) {
+
+      long days = floorDiv(localTime, MILLIS_PER_DAY);
+      millisOfDay = (int) (localTime - days * MILLIS_PER_DAY);
+      long date = civilFromDays(days);
+      year = (int) (date >> 9);
+      month = (int) (date >> 5 & 0xf);
+      day = (int) (date & 0x1f);
+
+    } else {
+
+      Calendar dateTime = new GregorianCalendar(GMT);
+      dateTime.setTimeInMillis(localTime);
+      year = dateTime.get(Calendar.YEAR);
+      month = dateTime.get(Calendar.MONTH) + 1;
+      day = dateTime.get(Calendar.DAY_OF_MONTH);
+      millisOfDay = dateTime.get(Calendar.MILLISECOND)
+          + 1000 * (dateTime.get(Calendar.SECOND)
+          + 60 * (dateTime.get(Calendar.MINUTE)
+          + 60 * dateTime.get(Calendar.HOUR_OF_DAY)));
     }
 
-    throw exception;
+    appendInt(sb, year, 4);
+    sb.append('-');
+    appendInt(sb, month, 2);
+    sb.append('-');
+    appendInt(sb, day, 2);
+
+    if (!dateOnly) {
+
+      int secondOfDay = millisOfDay / 1000;
+      sb.append(uiFormat ? ' ' : 'T');
+      appendInt(sb, secondOfDay / 3600, 2);
+      sb.append(':');
+      appendInt(sb, secondOfDay / 60 % 60, 2);
+
+      if (!uiFormat) {
+        sb.append(':');
+        appendInt(sb, secondOfDay % 60, 2);
+        sb.append('.');
+        appendInt(sb, millisOfDay % 1000, 3);
+      }
+    }
   }
 
 
@@ -440,12 +698,12 @@ public class DateTime implements Comparable<Object> {
       num = -num;
     }
 
-    char[] digits = new char[numDigits];
-    for (int digit = numDigits - 1; digit >= 0; --digit) {
-      digits[digit] = (char)('0' + num % 10);
-      num /= 10;
+    int divisor = 1;
+    for (int digit = 1; digit < numDigits; ++digit) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      sb.append((char) ('0' + num / divisor % 10));
     }
-
-    sb.append(digits);
   }
 }
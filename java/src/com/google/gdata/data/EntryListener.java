@@ -0,0 +1,39 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data;
+
+import com.google.gdata.util.ParseException;
+
+/**
+ * The EntryListener interface receives the entries of a feed one at a time
+ * while the feed is being parsed, instead of having them collected into the
+ * feed's entry list.
+ *
+ * @param <E> entry type of the feed
+ * @see BaseFeed#setEntryListener(EntryListener)
+ */
+public interface EntryListener<E extends BaseEntry<?>> {
+
+  /**
+   * Called once the closing tag of an entry has been parsed.  The entry is
+   * not referenced by the feed afterwards.
+   *
+   * @param entry the fully parsed entry
+   * @throws ParseException to abort parsing of the feed.
+   */
+  public void entryParsed(E entry) throws ParseException;
+}
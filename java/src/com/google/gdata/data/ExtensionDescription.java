@@ -16,6 +16,7 @@
 
 package com.google.gdata.data;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.util.common.xml.XmlWriter.Attribute;
@@ -63,6 +64,12 @@ public class ExtensionDescription extends ExtensionPoint
    */
   private Class<? extends Extension> extensionClass;
 
+  /**
+   * The factory used to create instances of the extension class, or
+   * {@code null} to use its default constructor.
+   */
+  private Supplier<? extends Extension> extensionFactory;
+
   /**
    * Specifies whether the extension is required within its parent extension
    * point.
@@ -251,6 +258,20 @@ public class ExtensionDescription extends ExtensionPoint
     return extensionClass;
   }
 
+  /**
+   * Sets the factory used to create instances of the extension class when
+   * parsing, which avoids calling its constructor by reflection.  The factory
+   * must return a new instance of the extension class on each call.
+   */
+  public void setExtensionFactory(
+      Supplier<? extends Extension> extensionFactory) {
+    this.extensionFactory = extensionFactory;
+  }
+
+  final public Supplier<? extends Extension> getExtensionFactory() {
+    return extensionFactory;
+  }
+
   public void setRequired(boolean required) {
     this.required = required;
   }
@@ -16,6 +16,8 @@
 
 package com.google.gdata.data;
 
+import com.google.common.base.Supplier;
+import com.google.common.collect.MapMaker;
 import com.google.gdata.util.common.base.Pair;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
@@ -30,12 +32,16 @@ import org.xml.sax.Attributes;
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -556,21 +562,95 @@ public class ExtensionPoint extends AbstractExtension {
   }
 
   /**
-   * Creates an instance of the given extension class.
+   * Registered factories of extension classes.  Classes are weakly
+   * referenced so that the cache doesn't prevent their classloader from
+   * being unloaded.
+   */
+  private static final ConcurrentMap<Class<?>, Supplier<?>> extensionFactories =
+      new MapMaker().weakKeys().makeMap();
+
+  /**
+   * Default constructors of extension classes, once looked up.  The
+   * constructors are softly referenced since they refer to their class.
+   */
+  private static final ConcurrentMap<Class<?>, Constructor<?>>
+      extensionConstructors = new MapMaker().weakKeys().softValues().makeMap();
+
+  /**
+   * Registers the factory used to create instances of an extension class,
+   * instead of calling its default constructor by reflection.  The factory
+   * must return a new instance of exactly {@code extClass} on each call.
+   *
+   * @see ExtensionDescription#setExtensionFactory(Supplier)
+   */
+  public static <T extends Extension> void registerExtensionFactory(
+      Class<T> extClass, Supplier<? extends T> factory) {
+    extensionFactories.put(extClass, factory);
+  }
+
+  /**
+   * Creates an instance of the given extension class, using its registered
+   * factory if any, or else its default constructor.
    *
    * @throws ParseException if unable to create an instance of the extension
    */
   protected static <T extends Extension> T createExtensionInstance(
       Class<T> extClass) throws ParseException {
+    Supplier<?> factory = extensionFactories.get(extClass);
+    if (factory != null) {
+      return extClass.cast(factory.get());
+    }
     try {
-      return extClass.newInstance();
+      Constructor<?> constructor = extensionConstructors.get(extClass);
+      if (constructor == null) {
+        constructor = getPublicConstructor(extClass);
+        if (constructor == null) {
+          // Let reflection check access to the constructor, as it always did.
+          return extClass.newInstance();
+        }
+        extensionConstructors.put(extClass, constructor);
+      }
+      return extClass.cast(constructor.newInstance());
     } catch (InstantiationException e) {
       throw new ParseException(
           CoreErrorDomain.ERR.cantCreateExtension, e);
     } catch (IllegalAccessException e) {
       throw new ParseException(
           CoreErrorDomain.ERR.cantCreateExtension, e);
+    } catch (InvocationTargetException e) {
+      throw new ParseException(
+          CoreErrorDomain.ERR.cantCreateExtension, e.getCause());
+    }
+  }
+
+  /**
+   * Returns the default constructor of a class if both are public, or else
+   * {@code null}.
+   */
+  private static Constructor<?> getPublicConstructor(Class<?> clazz) {
+    if (!Modifier.isPublic(clazz.getModifiers())) {
+      return null;
+    }
+    try {
+      return clazz.getConstructor();
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Creates an instance of the extension described by {@code extDescription}.
+   *
+   * @throws ParseException if unable to create an instance of the extension
+   */
+  private static Extension createExtensionInstance(
+      ExtensionDescription extDescription) throws ParseException {
+    Supplier<? extends Extension> factory =
+        extDescription.getExtensionFactory();
+    if (factory != null) {
+      return factory.get();
     }
+    return createExtensionInstance(extDescription.getExtensionClass());
   }
 
   /**
@@ -623,7 +703,7 @@ public class ExtensionPoint extends AbstractExtension {
 
     boolean needsAdd = true;
     if (extension == null) {
-      extension = createExtensionInstance(extClass);
+      extension = createExtensionInstance(extDescription);
     } else {
       needsAdd = false;
     }
@@ -38,8 +38,11 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Specifies a complete extension profile for an extended GData schema.
@@ -49,6 +52,11 @@ import java.util.TreeSet;
  * For example, Calendar might allow {@code <gd:who>} within {@code
  * <atom:feed>}, and {@code <gd:when>}, {@code <gd:who>}, and {@code
  * <gd:where>} within {@code <atom:entry>}.
+ * <p>
+ * Once all extensions are declared, a profile can be {@link #freeze() frozen}
+ * to make it immutable.  A frozen profile can be shared by any number of
+ * services and used by concurrent parsers without locking, and resolves
+ * manifests through a cache instead of walking the superclass chain.
  *
  * 
  * 
@@ -56,8 +64,25 @@ import java.util.TreeSet;
 public class ExtensionProfile {
 
   /** Set of previously declared Kind.Adaptor classes. */
-  private HashSet<Class<? extends Kind.Adaptor>> declared =
-      new HashSet<Class<? extends Kind.Adaptor>>();
+  private final Set<Class<? extends Kind.Adaptor>> declared =
+      Collections.newSetFromMap(
+          new ConcurrentHashMap<Class<? extends Kind.Adaptor>, Boolean>());
+
+  /**
+   * Marks types that have no manifest in {@link #resolvedManifests}.
+   */
+  private static final ExtensionManifest NO_MANIFEST =
+      new ExtensionManifest(ExtensionPoint.class);
+
+  /** Whether the profile is frozen. */
+  private volatile boolean frozen = false;
+
+  /**
+   * Manifests of extended types resolved through their superclasses, once
+   * the profile is frozen.
+   */
+  private final ConcurrentMap<Class<?>, ExtensionManifest> resolvedManifests =
+      new ConcurrentHashMap<Class<?>, ExtensionManifest>();
 
   /**
    * Adds the extension declarations associated with an {@link Kind.Adaptor}
@@ -68,7 +93,13 @@ public class ExtensionProfile {
   public void addDeclarations(Kind.Adaptor adaptor) {
     Class<? extends Kind.Adaptor> adaptorClass = adaptor.getClass();
     if (declared.add(adaptorClass)) {
-      adaptor.declareExtensions(this);
+      try {
+        adaptor.declareExtensions(this);
+      } catch (IllegalStateException e) {
+        // The profile is frozen and doesn't declare the adaptor extensions.
+        declared.remove(adaptorClass);
+        throw e;
+      }
     }
   }
 
@@ -85,6 +116,12 @@ public class ExtensionProfile {
    */
   public synchronized void declare(Class<? extends ExtensionPoint> extendedType,
                                    ExtensionDescription extDescription) {
+    if (frozen) {
+      checkDeclared(remapExtendedType(extendedType),
+          remapDescription(extendedType, extDescription));
+      return;
+    }
+
     // When configuring an extension profile that is auto-extensible, remap
     // th extension point assocations from the specific type down to any
     // base adaptable type.  This ensures that extensions will be parseable
@@ -98,15 +135,7 @@ public class ExtensionProfile {
          example bug 191364. */
       if (!wasRequirednessRemoved && extDescription.isRequired()) {
         wasRequirednessRemoved = true;
-        extDescription = new ExtensionDescription(
-            extDescription.getExtensionClass(),
-            extDescription.getNamespace(),
-            extDescription.getLocalName(),
-            false,
-            extDescription.isRepeatable(),
-            extDescription.isAggregate(),
-            extDescription.allowsArbitraryXml(),
-            extDescription.allowsMixedContent());
+        extDescription = remapDescription(extendedType, extDescription);
       }
         extendedType = extensionPointClass(extendedType.getSuperclass());
     }
@@ -137,6 +166,131 @@ public class ExtensionProfile {
   }
 
 
+  /**
+   * Returns the type that declarations for {@code extendedType} are
+   * associated with: the type itself or, in an auto-extending profile, its
+   * most generic adaptable supertype.
+   */
+  private Class<? extends ExtensionPoint> remapExtendedType(
+      Class<? extends ExtensionPoint> extendedType) {
+    while (isAutoExtending &&
+        Kind.Adaptable.class.isAssignableFrom(extendedType.getSuperclass())) {
+      extendedType = extensionPointClass(extendedType.getSuperclass());
+    }
+    return extendedType;
+  }
+
+  /**
+   * Returns the description declared when {@code extDescription} is declared
+   * for {@code extendedType}, without required-ness if it is remapped to a
+   * supertype.
+   */
+  private ExtensionDescription remapDescription(
+      Class<? extends ExtensionPoint> extendedType,
+      ExtensionDescription extDescription) {
+    if (remapExtendedType(extendedType) == extendedType
+        || !extDescription.isRequired()) {
+      return extDescription;
+    }
+    ExtensionDescription optional = new ExtensionDescription(
+        extDescription.getExtensionClass(),
+        extDescription.getNamespace(),
+        extDescription.getLocalName(),
+        false,
+        extDescription.isRepeatable(),
+        extDescription.isAggregate(),
+        extDescription.allowsArbitraryXml(),
+        extDescription.allowsMixedContent());
+    optional.setExtensionFactory(extDescription.getExtensionFactory());
+    return optional;
+  }
+
+  /**
+   * Checks that a declaration made on a frozen profile is already part of
+   * it, so that declaring the same extensions again, as auto-extension does
+   * while parsing, is allowed.
+   *
+   * @throws IllegalStateException if the declaration would change the
+   *     profile.
+   */
+  private void checkDeclared(Class<? extends ExtensionPoint> extendedType,
+      ExtensionDescription extDescription) {
+    ExtensionManifest manifest = profile.get(extendedType);
+    ExtensionDescription existing = (manifest == null) ? null :
+        manifest.supportedExtensions.get(new Pair<String, String>(
+            extDescription.getNamespace().getUri(),
+            extDescription.getLocalName()));
+    if (existing == null
+        || existing.getExtensionClass() != extDescription.getExtensionClass()
+        || existing.isRequired() != extDescription.isRequired()
+        || existing.isRepeatable() != extDescription.isRepeatable()
+        || existing.isAggregate() != extDescription.isAggregate()
+        || existing.allowsArbitraryXml() != extDescription.allowsArbitraryXml()
+        || existing.allowsMixedContent()
+            != extDescription.allowsMixedContent()) {
+      throw frozenException();
+    }
+    if (extDescription.allowsArbitraryXml()) {
+      checkArbitraryXmlDeclared(extDescription.getExtensionClass(),
+          extDescription.allowsMixedContent());
+    }
+  }
+
+  private void checkArbitraryXmlDeclared(Class<?> extendedType,
+      boolean mixedContent) {
+    ExtensionManifest manifest = profile.get(extendedType);
+    if (manifest == null || !manifest.arbitraryXml
+        || manifest.mixedContent != mixedContent) {
+      throw frozenException();
+    }
+  }
+
+  private static IllegalStateException frozenException() {
+    return new IllegalStateException("Extension profile is frozen");
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw frozenException();
+    }
+  }
+
+  /**
+   * Makes the profile immutable, along with its feed and entry link
+   * profiles.  Declarations that would change a frozen profile throw
+   * {@link IllegalStateException}; declaring extensions that are already
+   * part of it has no effect.  A frozen auto-extending profile can therefore
+   * only parse kinds whose extensions were declared before it was frozen.
+   * <p>
+   * Lookups in a frozen profile are lock-free, and the manifests of
+   * subclasses of the declared types are resolved once and cached.
+   *
+   * @return this profile
+   */
+  public synchronized ExtensionProfile freeze() {
+    if (frozen) {
+      return this;
+    }
+    if (feedLinkProfile != null && feedLinkProfile != this) {
+      feedLinkProfile.freeze();
+    }
+    if (entryLinkProfile != null && entryLinkProfile != this) {
+      entryLinkProfile.freeze();
+    }
+    nsDecls = computeNamespaceDecls();
+    resolvedManifests.putAll(profile);
+    frozen = true;
+    return this;
+  }
+
+  /**
+   * Returns whether the profile is {@link #freeze() frozen}.
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+
   /**
    * Specifies that type {@code extendedType} can contain an extension described
    * by {@code extClass}, as determined by
@@ -240,6 +394,10 @@ public class ExtensionProfile {
   public synchronized void declareArbitraryXmlExtension(
       Class<? extends ExtensionPoint> extendedType,
       boolean mixedContent) {
+    if (frozen) {
+      checkArbitraryXmlDeclared(extendedType, mixedContent);
+      return;
+    }
     ExtensionManifest manifest = getOrCreateManifest(extendedType);
     manifest.arbitraryXml = true;
     manifest.mixedContent = mixedContent;
@@ -257,32 +415,38 @@ public class ExtensionProfile {
 
   /** Specifies additional top-level namespace declarations. */
   public synchronized void declareAdditionalNamespace(XmlNamespace ns) {
+    if (frozen && additionalNamespaces.contains(ns)) {
+      return;
+    }
+    checkNotFrozen();
     additionalNamespaces.add(ns);
   }
 
 
   /** Specifies the type of feeds nested within {@code <gd:feedLink>}. */
   public synchronized void declareFeedLinkProfile(ExtensionProfile profile) {
+    checkNotFrozen();
     feedLinkProfile = profile;
     nsDecls = null;
   }
 
 
   /** Retrieves the type of feeds nested within {@code <gd:feedLink>}. */
-  public synchronized ExtensionProfile getFeedLinkProfile() {
+  public ExtensionProfile getFeedLinkProfile() {
     return feedLinkProfile;
   }
 
 
   /** Specifies the type of entries nested within {@code <gd:entryLink>}. */
   public synchronized void declareEntryLinkProfile(ExtensionProfile profile) {
+    checkNotFrozen();
     entryLinkProfile = profile;
     nsDecls = null;
   }
 
 
   /** Retrieves the type of entries nested within {@code <gd:entryLink>}. */
-  public synchronized ExtensionProfile getEntryLinkProfile() {
+  public ExtensionProfile getEntryLinkProfile() {
     return entryLinkProfile;
   }
 
@@ -292,6 +456,9 @@ public class ExtensionProfile {
    * its superclasses) or {@code null} if not specified.
    */
   public ExtensionManifest getManifest(Class<?> extendedType) {
+    if (frozen) {
+      return getResolvedManifest(extendedType);
+    }
     ExtensionManifest manifest = null;
     while (extendedType != null) {
       manifest = profile.get(extendedType);
@@ -303,6 +470,24 @@ public class ExtensionProfile {
   }
 
 
+  /**
+   * Retrieves a manifest from a frozen profile, resolving it through the
+   * superclasses of the type the first time it is requested.
+   */
+  private ExtensionManifest getResolvedManifest(Class<?> extendedType) {
+    if (extendedType == null) {
+      return null;
+    }
+    ExtensionManifest manifest = resolvedManifests.get(extendedType);
+    if (manifest == null) {
+      manifest = getResolvedManifest(extendedType.getSuperclass());
+      resolvedManifests.put(extendedType,
+          manifest == null ? NO_MANIFEST : manifest);
+      return manifest;
+    }
+    return manifest == NO_MANIFEST ? null : manifest;
+  }
+
   /**
    * Returns whether the given extended type has already been declared.  Note
    * that unlike {@link #getManifest(Class)}, it does not check the super
@@ -314,8 +499,14 @@ public class ExtensionProfile {
 
 
   /** Retrieves a collection of all namespaces used by this profile. */
-  public synchronized Collection<XmlNamespace> getNamespaceDecls() {
+  public Collection<XmlNamespace> getNamespaceDecls() {
+    if (frozen) {
+      return nsDecls;
+    }
+    return getMutableNamespaceDecls();
+  }
 
+  private synchronized Collection<XmlNamespace> getMutableNamespaceDecls() {
     if (nsDecls == null) {
       nsDecls = computeNamespaceDecls();
     }
@@ -335,11 +526,11 @@ public class ExtensionProfile {
 
 
   /** Nested feed link profile. */
-  private ExtensionProfile feedLinkProfile;
+  private volatile ExtensionProfile feedLinkProfile;
 
 
   /** Nested entry link profile. */
-  private ExtensionProfile entryLinkProfile;
+  private volatile ExtensionProfile entryLinkProfile;
 
 
   /** Namespace declarations cache. */
@@ -349,7 +540,13 @@ public class ExtensionProfile {
   /** Profile supports auto-extension declaration */
   private boolean isAutoExtending = false;
 
-  public void setAutoExtending(boolean v) { isAutoExtending = v; }
+  public void setAutoExtending(boolean v) {
+    if (v != isAutoExtending) {
+      checkNotFrozen();
+    }
+    isAutoExtending = v;
+  }
+
   public boolean isAutoExtending() { return isAutoExtending; }
 
   /**
@@ -372,7 +569,12 @@ public class ExtensionProfile {
    *
    * #see ExtensionPoint.getXmlBlob()
    */
-  public void setArbitraryXml(boolean v) { allowsArbitraryXml = v; }
+  public void setArbitraryXml(boolean v) {
+    if (v != allowsArbitraryXml) {
+      checkNotFrozen();
+    }
+    allowsArbitraryXml = v;
+  }
 
   /**
    * Returns whether foreign XML elements will be preserved within any
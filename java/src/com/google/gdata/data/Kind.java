@@ -16,6 +16,7 @@
 
 package com.google.gdata.data;
 
+import com.google.common.collect.MapMaker;
 import com.google.gdata.util.Namespaces;
 import com.google.gdata.util.ServiceException;
 
@@ -30,9 +31,11 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The Kind class defines annotation types, interfaces and static helper 
@@ -50,14 +53,39 @@ public class Kind {
    */
   public static final String META_DIRECTORY = "META-INF/gdata/kinds/";
   
+  /**
+   * Maximum number of kind terms without adaptors cached per classloader.
+   * Kind terms come from parsed content, so their number is unbounded;
+   * lookups of further unknown terms are not cached.
+   */
+  static final int MAX_CACHED_MISSES = 1024;
+
   /**
    * Caches the mappings from a kind term to the {@link Adaptor} classes that
-   * handle the kind.  Since these are configured by JAR-based metadata,
+   * handle the kind, by the classloader of the {@link Adaptable} types they
+   * were loaded for.  Since these are configured by JAR-based metadata,
    * they are guaranteed to be constant once loaded unless/until the
-   * classloader for GData java library is bounced.
+   * classloader is bounced.  Kinds without adaptors are cached as an empty
+   * list.  The per-classloader caches are softly referenced, since the
+   * adaptor classes they hold would otherwise keep their classloader alive.
    */
-  private static Map<String, List<Class<Adaptor>>> kindAdaptors =
-      new HashMap<String, List<Class<Adaptor>>>();
+  private static final ConcurrentMap<ClassLoader, KindCache> kindAdaptors =
+      new MapMaker().weakKeys().softValues().makeMap();
+
+  private static final AtomicLong cacheHits = new AtomicLong();
+  private static final AtomicLong cacheMisses = new AtomicLong();
+
+  /**
+   * The adaptor classes of the kinds looked up through a classloader.
+   */
+  private static class KindCache {
+
+    final ConcurrentMap<String, List<Class<Adaptor>>> adaptors =
+        new ConcurrentHashMap<String, List<Class<Adaptor>>>();
+
+    /** Number of cached kinds without adaptors. */
+    final AtomicLong missCount = new AtomicLong();
+  }
 
   /**
    * The Term annnotation type is used to annotate {@link Adaptor}
@@ -224,48 +252,124 @@ public class Kind {
   }
 
   /**
-   * Returns that {@link Adaptor} class that handles the
-   * declaration of extensions within an {@link ExtensionProfile} based
-   * upon the kind term value.  A return value of {@code null} indicates
-   * that no adaptor class could be located for this cobintation of kind and
-   * {@link Adaptable} type.
+   * Returns the adaptor cache of a classloader.
    */
-  public static Class<Adaptor> getAdaptorClass(String kindTerm,
-                                               Adaptable adaptable)
-      throws AdaptorException {
+  private static KindCache getKindCache(ClassLoader cl) {
+    KindCache cache = kindAdaptors.get(cl);
+    if (cache == null) {
+      cache = new KindCache();
+      KindCache existing = kindAdaptors.putIfAbsent(cl, cache);
+      if (existing != null) {
+        cache = existing;
+      }
+    }
+    return cache;
+  }
 
-    ClassLoader cl = adaptable.getClass().getClassLoader();
+  /**
+   * Returns the adaptor classes of a kind, loading them through the given
+   * classloader on first usage.  An empty list is returned if the kind has
+   * no adaptors.
+   */
+  private static List<Class<Adaptor>> getAdaptorList(String kindTerm,
+      ClassLoader cl) throws AdaptorException {
+
+    KindCache cache = getKindCache(cl);
+    List<Class<Adaptor>> adaptorList = cache.adaptors.get(kindTerm);
+    if (adaptorList != null) {
+      cacheHits.incrementAndGet();
+      return adaptorList;
+    }
+    cacheMisses.incrementAndGet();
 
-    List<Class<Adaptor>> adaptorList = kindAdaptors.get(kindTerm);
-    if (adaptorList == null) {
-      // Lazily load the adaptor list for a kind on first usage and store
-      // in the cache.
-      adaptorList = new ArrayList<Class<Adaptor>>();
-      String termService = getKindServiceName(kindTerm);
-      InputStream serviceStream;
-      try {
-        serviceStream = cl.getResourceAsStream(META_DIRECTORY
-            + termService);
-        if (serviceStream == null) {
-          return null;
+    // Lazily load the adaptor list for a kind on first usage and store
+    // in the cache.
+    adaptorList = new ArrayList<Class<Adaptor>>();
+    String termService = getKindServiceName(kindTerm);
+    InputStream serviceStream;
+    try {
+      serviceStream = cl.getResourceAsStream(META_DIRECTORY
+          + termService);
+      if (serviceStream == null) {
+        // Remember kinds without adaptors, up to a limit.
+        if (cache.missCount.incrementAndGet() <= MAX_CACHED_MISSES) {
+          cache.adaptors.put(kindTerm,
+              Collections.<Class<Adaptor>>emptyList());
+        } else {
+          cache.missCount.decrementAndGet();
         }
-        BufferedReader rdr =
-          new BufferedReader(new InputStreamReader(serviceStream));
+        return Collections.emptyList();
+      }
+      BufferedReader rdr =
+        new BufferedReader(new InputStreamReader(serviceStream));
+      try {
         String line;
         while ((line = rdr.readLine()) != null) {
           if (line.charAt(0) == '#') {  // comment line
             continue;
           }
-          
+
           adaptorList.add((Class<Adaptor>) cl.loadClass(line));
         }
-      } catch (IOException ioe) {
-        throw new AdaptorException("Unable to load Adaptor service info", ioe);
-      } catch (ClassNotFoundException cnfe) {
-        throw new AdaptorException("Unable to load Adaptor class", cnfe);
+      } finally {
+        rdr.close();
       }
-      kindAdaptors.put(kindTerm, adaptorList);
+    } catch (IOException ioe) {
+      throw new AdaptorException("Unable to load Adaptor service info", ioe);
+    } catch (ClassNotFoundException cnfe) {
+      throw new AdaptorException("Unable to load Adaptor class", cnfe);
+    }
+    cache.adaptors.put(kindTerm, adaptorList);
+    return adaptorList;
+  }
+
+  /**
+   * Loads the {@link Adaptor} classes of the given kinds through a
+   * classloader, so that later lookups of these kinds are served from the
+   * cache.  Applications can call this at startup with the kinds they
+   * expect.
+   *
+   * @param kindTerms kind term values.
+   * @param cl classloader of the {@link Adaptable} types the kinds are used
+   *     with.
+   * @throws AdaptorException if the adaptors of a kind can't be loaded.
+   */
+  public static void preloadAdaptors(Collection<String> kindTerms,
+      ClassLoader cl) throws AdaptorException {
+    for (String kindTerm : kindTerms) {
+      getAdaptorList(kindTerm, cl);
     }
+  }
+
+  /**
+   * Returns the number of adaptor lookups served from the cache.
+   */
+  public static long getAdaptorCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Returns the number of adaptor lookups that had to search the
+   * classloader for kind metadata.
+   */
+  public static long getAdaptorCacheMisses() {
+    return cacheMisses.get();
+  }
+
+  /**
+   * Returns that {@link Adaptor} class that handles the
+   * declaration of extensions within an {@link ExtensionProfile} based
+   * upon the kind term value.  A return value of {@code null} indicates
+   * that no adaptor class could be located for this cobintation of kind and
+   * {@link Adaptable} type.
+   */
+  public static Class<Adaptor> getAdaptorClass(String kindTerm,
+                                               Adaptable adaptable)
+      throws AdaptorException {
+
+    ClassLoader cl = adaptable.getClass().getClassLoader();
+
+    List<Class<Adaptor>> adaptorList = getAdaptorList(kindTerm, cl);
 
     // A mix-in adaptor type will only have one mapping, that can be used
     // for all valid contexts since it doesn't rely upon inheritance.
@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
 import com.google.gdata.data.Extension;
@@ -38,6 +39,13 @@ import java.util.ArrayList;
  */
 public class Email extends ExtensionPoint implements Extension {
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<Email> FACTORY = new Supplier<Email>() {
+    public Email get() {
+      return new Email();
+    }
+  };
+
   /** The email type. */
   public static final class Rel {
     public static final String GENERAL = null;
@@ -80,6 +88,7 @@ public class Email extends ExtensionPoint implements Extension {
   public static ExtensionDescription getDefaultDescription() {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(Email.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName("email");
     desc.setRepeatable(true);
@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
 import com.google.gdata.data.ExtensionDescription;
@@ -43,6 +44,13 @@ import java.util.List;
     localName = ExtendedProperty.EXTENDED_PROPERTY)
 public class ExtendedProperty extends ExtensionPoint {
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<ExtendedProperty> FACTORY = new Supplier<ExtendedProperty>() {
+    public ExtendedProperty get() {
+      return new ExtendedProperty();
+    }
+  };
+
   /** XML "extendedProperty" element name */
   static final String EXTENDED_PROPERTY = "extendedProperty";
 
@@ -113,6 +121,7 @@ public class ExtendedProperty extends ExtensionPoint {
   public static ExtensionDescription getDefaultDescription() {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(ExtendedProperty.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName(EXTENDED_PROPERTY);
     desc.setRepeatable(true);
@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.data.Extension;
 import com.google.gdata.data.ExtensionDescription;
@@ -36,6 +37,13 @@ import java.util.ArrayList;
  */
 public class PhoneNumber implements Extension {
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<PhoneNumber> FACTORY = new Supplier<PhoneNumber>() {
+    public PhoneNumber get() {
+      return new PhoneNumber();
+    }
+  };
+
   /** The phone number type. */
   public static final class Rel {
     public static final String GENERAL = null;
@@ -92,6 +100,7 @@ public class PhoneNumber implements Extension {
   public static ExtensionDescription getDefaultDescription() {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(PhoneNumber.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName("phoneNumber");
     desc.setRepeatable(true);
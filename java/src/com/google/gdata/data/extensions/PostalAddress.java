@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.data.Extension;
 import com.google.gdata.data.ExtensionDescription;
@@ -36,6 +37,13 @@ import java.util.ArrayList;
  */
 public class PostalAddress implements Extension {
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<PostalAddress> FACTORY = new Supplier<PostalAddress>() {
+    public PostalAddress get() {
+      return new PostalAddress();
+    }
+  };
+
   /** The postal address type. */
   public static final class Rel {
     public static final String GENERAL = null;
@@ -69,6 +77,7 @@ public class PostalAddress implements Extension {
   public static ExtensionDescription getDefaultDescription() {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(PostalAddress.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName("postalAddress");
     desc.setRepeatable(true);
@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
 import com.google.gdata.data.DateTime;
@@ -118,6 +119,13 @@ public class Reminder extends ExtensionPoint implements Extension {
     }
   }
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<Reminder> FACTORY = new Supplier<Reminder>() {
+    public Reminder get() {
+      return new Reminder();
+    }
+  };
+
   /** Number of days before the start time. */
   protected Integer days;
   public Integer getDays() { return days; }
@@ -150,6 +158,7 @@ public class Reminder extends ExtensionPoint implements Extension {
   public static ExtensionDescription getDefaultDescription() {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(Reminder.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName("reminder");
     desc.setRepeatable(true);
@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.data.BaseEntry;
 import com.google.gdata.data.Extension;
@@ -41,6 +42,13 @@ import java.util.ArrayList;
  */
 public class Where extends ExtensionPoint implements Extension {
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<Where> FACTORY = new Supplier<Where>() {
+    public Where get() {
+      return new Where();
+    }
+  };
+
   /** Relation type. Describes the meaning of this location. */
   public static final class Rel {
     /** Place where the enclosing event occurs. */
@@ -88,6 +96,7 @@ public class Where extends ExtensionPoint implements Extension {
   public static ExtensionDescription getDefaultDescription() {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(Where.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName("where");
     desc.setRepeatable(true);
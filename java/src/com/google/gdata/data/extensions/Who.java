@@ -16,6 +16,7 @@
 
 package com.google.gdata.data.extensions;
 
+import com.google.common.base.Supplier;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.data.BaseEntry;
 import com.google.gdata.data.Extension;
@@ -42,6 +43,13 @@ import java.util.ArrayList;
  */
 public class Who extends ExtensionPoint implements Extension {
 
+  /** Creates instances of the extension when parsing. */
+  private static final Supplier<Who> FACTORY = new Supplier<Who>() {
+    public Who get() {
+      return new Who();
+    }
+  };
+
   /** Relation type. Describes the meaning of this association. */
   public static final class Rel {
     public static final String EVENT_ATTENDEE =
@@ -132,6 +140,7 @@ public class Who extends ExtensionPoint implements Extension {
   public static ExtensionDescription getDefaultDescription(boolean repeatable) {
     ExtensionDescription desc = new ExtensionDescription();
     desc.setExtensionClass(Who.class);
+    desc.setExtensionFactory(FACTORY);
     desc.setNamespace(Namespaces.gNs);
     desc.setLocalName("who");
     desc.setRepeatable(repeatable);
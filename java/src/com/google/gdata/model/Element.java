@@ -23,6 +23,7 @@ import com.google.gdata.util.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Sets;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.model.ElementMetadata.Cardinality;
@@ -35,12 +36,14 @@ import com.google.gdata.wireformats.ObjectConverter;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,6 +78,25 @@ public class Element {
   private static final Logger LOGGER =
       Logger.getLogger(Element.class.getName());
 
+  /**
+   * Default keys of element types, once looked up.  Types are weakly and
+   * keys softly referenced, so that the cache doesn't prevent the classloader
+   * of the types from being unloaded.
+   */
+  private static final ConcurrentMap<Class<?>, ElementKey<?, ?>> defaultKeys =
+      new MapMaker().weakKeys().softValues().makeMap();
+
+  /**
+   * Constructors of element types, by type and parameter types, once looked
+   * up.  Signatures that match no constructor map to {@link #NO_CONSTRUCTOR}.
+   * Referenced like {@link #defaultKeys}.
+   */
+  private static final ConcurrentMap<Class<?>,
+      ConcurrentMap<List<Class<?>>, Object>> constructors =
+          new MapMaker().weakKeys().softValues().makeMap();
+
+  private static final Object NO_CONSTRUCTOR = new Object();
+
   /**
    * Returns the default {@link ElementKey} for an {@link Element} type.
    *
@@ -85,10 +107,14 @@ public class Element {
 
     Preconditions.checkNotNull(type, "type");
 
+    ElementKey<?, ?> key = defaultKeys.get(type);
+    if (key != null) {
+      return key;
+    }
+
     // The current approach used reflection based upon the implementation
     // pattern that every Element type will expose a static ElementKey field
     // named "KEY".
-    ElementKey<?, ?> key = null;
     try {
       Field keyField = type.getField("KEY");
       key = ElementKey.class.cast(keyField.get(null));
@@ -105,6 +131,9 @@ public class Element {
       throw new IllegalArgumentException("Unable to access KEY field:" + type,
           npe);
     }
+    if (key != null) {
+      defaultKeys.put(type, key);
+    }
     return key;
   }
 
@@ -1394,25 +1423,55 @@ public class Element {
   /**
    * Attempt to construct an instance of the given class with the given args
    * and arg types.  Will set the constructor to accessible, allowing access
-   * to non-public constructors, so use with caution.
+   * to non-public constructors, so use with caution.  The constructor found
+   * for each class and arg types is cached, so that only the first instance
+   * pays for the lookup.
    */
   private static <T> T construct(Class<? extends T> clazz, Class<?>[] argTypes,
       Object[] args) throws SecurityException, NoSuchMethodException,
       InstantiationException, IllegalAccessException,
       InvocationTargetException {
+    ConcurrentMap<List<Class<?>>, Object> classConstructors =
+        constructors.get(clazz);
+    if (classConstructors == null) {
+      ConcurrentMap<List<Class<?>>, Object> newConstructors =
+          new MapMaker().makeMap();
+      classConstructors = constructors.putIfAbsent(clazz, newConstructors);
+      if (classConstructors == null) {
+        classConstructors = newConstructors;
+      }
+    }
+
+    List<Class<?>> signature = Arrays.asList(argTypes);
+    Object ctc = classConstructors.get(signature);
+    if (ctc == null) {
+      ctc = findConstructor(clazz, argTypes);
+      classConstructors.put(signature, ctc);
+    }
+
+    if (ctc == NO_CONSTRUCTOR) {
+      // We didn't find a constructor, this will report an error consistent
+      // with not finding a valid public constructor.
+      return clazz.getConstructor(argTypes).newInstance(args);
+    }
     @SuppressWarnings("unchecked")
-    Constructor<T>[] ctcs = (Constructor<T>[]) clazz.getDeclaredConstructors();
-    for (Constructor<T> ctc : ctcs) {
+    Constructor<? extends T> constructor = (Constructor<? extends T>) ctc;
+    return constructor.newInstance(args);
+  }
+
+  /**
+   * Returns the accessible constructor of the given class matching the given
+   * arg types, or {@link #NO_CONSTRUCTOR} if there is none.
+   */
+  private static Object findConstructor(Class<?> clazz, Class<?>[] argTypes) {
+    for (Constructor<?> ctc : clazz.getDeclaredConstructors()) {
       Class<?>[] paramTypes = ctc.getParameterTypes();
       if (paramsValid(paramTypes, argTypes)) {
         ctc.setAccessible(true);
-        return ctc.newInstance(args);
+        return ctc;
       }
     }
-
-    // We didn't find a constructor, this will report an error consistent
-    // with not finding a valid public constructor.
-    return clazz.getConstructor(argTypes).newInstance(args);
+    return NO_CONSTRUCTOR;
   }
 
   private static boolean paramsValid(Class<?>[] paramTypes,
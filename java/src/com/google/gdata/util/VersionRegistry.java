@@ -254,7 +254,24 @@ public class VersionRegistry {
   public List<Version> getThreadVersions() {
     return threadVersions.get();
   }
-  
+
+  /**
+   * Sets the list of versions associated with the current thread to a value
+   * previously returned by {@link #getThreadVersions()}.  This can be used to
+   * carry the version information of one thread over to another thread that
+   * performs work on its behalf.
+   *
+   * @param versions thread version list or {@code null} to reset to the
+   *        default state.
+   */
+  public void setThreadVersions(List<Version> versions) {
+    if (versions == null) {
+      resetThreadVersion();
+    } else {
+      threadVersions.set(Collections.unmodifiableList(versions));
+    }
+  }
+
   /**
    * Resets the version information for the current thread back to the
    * default state.
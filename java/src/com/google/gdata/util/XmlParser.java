@@ -20,6 +20,7 @@ package com.google.gdata.util;
 
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
+import com.google.gdata.util.common.xml.parsing.SAXParserCache;
 import com.google.gdata.util.common.xml.parsing.SecureGenericXMLFactory;
 import com.google.gdata.client.CoreErrorDomain;
 
@@ -28,7 +29,6 @@ import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.ParserAdapter;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -46,7 +46,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 
@@ -79,8 +78,8 @@ public class XmlParser extends DefaultHandler {
     Logger.getLogger(XmlParser.class.getName());
 
 
-  // The SAXParserFactory used to create underlying SAXParser instances.
-  private static SAXParserFactory parserFactory;
+  // The per-thread cache of SAXParser instances used for parsing.
+  private static SAXParserCache parserCache;
 
   // Always return secure SAX parser, which is secured against XXE attacks
   private static SAXParserFactory getSAXParserFactory()
@@ -678,20 +677,17 @@ public class XmlParser extends DefaultHandler {
 
     try {
 
-      // Lazy initialization of the parser factory.  There is a minor
+      // Lazy initialization of the parser cache.  There is a minor
       // init-time race condition here if two parsers are created
       // simultaneously, but the getSAXParserFactory() impl is thread-safe
       // and worse case scenario is that multiple parser factories are
       // initially created during the race.  Double-checked locking bug
       // makes it harder to do better w/out significant overhead.
-      if (parserFactory == null) {
-        parserFactory = getSAXParserFactory();
+      if (parserCache == null) {
+        parserCache = new SAXParserCache(getSAXParserFactory());
       }
 
-      SAXParser sp = parserFactory.newSAXParser();
-      ParserAdapter pa = new ParserAdapter(sp.getParser());
-      pa.setContentHandler(this);
-      pa.parse(is);
+      parserCache.parse(is, this);
 
     } catch (SAXException e) {
 
@@ -24,11 +24,9 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EmptyStackException;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 
 /**
  * Implements a simple XML writer on top of java.io.PrintWriter.
@@ -313,9 +311,9 @@ public class XmlWriter {
   protected final Writer writer;
 
   /**
-   * Stack of currently opened elements.
+   * Stack of currently opened elements, with the innermost element last.
    */
-  private final Stack<Element> elementStack;
+  private final ArrayList<Element> elementStack;
 
   /**
    * Current default namespace.
@@ -375,10 +373,10 @@ public class XmlWriter {
      * the root element without requiring special case handling of an
      * empty element stack.
      */
-    this.elementStack = new Stack<Element>();
+    this.elementStack = new ArrayList<Element>();
     Element rootElement = createElement(null, null, null);
     rootElement.openTagEnded = true;
-    elementStack.push(rootElement);
+    elementStack.add(rootElement);
   }
 
   /**
@@ -455,11 +453,8 @@ public class XmlWriter {
    * written.
    */
   protected Element currentElement() {
-    try {
-      return elementStack.peek();
-    } catch (EmptyStackException e) {
-      return null;
-    }
+    int size = elementStack.size();
+    return size == 0 ? null : elementStack.get(size - 1);
   }
 
   /**
@@ -526,7 +521,7 @@ public class XmlWriter {
       }
     }
 
-    elementStack.push(element);
+    elementStack.add(element);
 
     if (nextDefaultNamespace != null) {
       XmlNamespace defaultNs = new XmlNamespace(nextDefaultNamespace);
@@ -616,7 +611,7 @@ public class XmlWriter {
     Element element = currentElement();
     writeCloseTag(element.nsAlias, element.name);
     defaultNamespace = element.enclosingDefaultNamespace;
-    elementStack.pop();
+    elementStack.remove(elementStack.size() - 1);
 
     // Write the footer if we're down to just the dummy element.
     if (elementStack.size() == 1) {
@@ -965,11 +960,80 @@ public class XmlWriter {
     writer.write('=');
     writer.write('\'');
     if (value != null) {
-      writer.write(StringUtil.xmlEscape(value));
+      writeAttributeValue(value);
     }
     writer.write('\'');
   }
 
+  /**
+   * Writes an attribute value with the same escaping as
+   * {@link StringUtil#xmlEscape(String)}.  Runs of characters that don't need
+   * escaping are written directly from the value, without copying it.
+   */
+  private void writeAttributeValue(String value) throws IOException {
+    int start = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      String replacement;
+      switch (value.charAt(i)) {
+        case '"': replacement = "&quot;"; break;
+        case '&': replacement = "&amp;"; break;
+        case '\'': replacement = "&apos;"; break;
+        case '<': replacement = "&lt;"; break;
+        case '>': replacement = "&gt;"; break;
+        case '\n': replacement = "&#xA;"; break;
+        case '\r': replacement = "&#xD;"; break;
+        case '\t': replacement = "&#x9;"; break;
+        case '\0':
+          // \0 is not a valid XML char - skip it
+          replacement = ""; break;
+        default:
+          continue;
+      }
+      writer.write(value, start, i - start);
+      writer.write(replacement);
+      start = i + 1;
+    }
+    if (start == 0) {
+      writer.write(value);
+    } else {
+      writer.write(value, start, length - start);
+    }
+  }
+
+  /**
+   * Writes element content with the same escaping as
+   * {@link StringUtil#xmlContentEscape(String)}.  Runs of characters that
+   * don't need escaping are written directly from the content, without
+   * copying it.
+   */
+  private void writeContent(String s) throws IOException {
+    int start = 0;
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      String replacement;
+      if (c == '&') {
+        replacement = "&amp;";
+      } else if (c == '<') {
+        replacement = "&lt;";
+      } else if (c < ' ' && c != '\t' && c != '\n' && c != '\r') {
+        // skip disallowed control characters
+        replacement = "";
+      } else {
+        continue;
+      }
+      writer.write(s, start, i - start);
+      writer.write(replacement);
+      start = i + 1;
+    }
+    if (start == 0) {
+      writer.write(s);
+    } else {
+      writer.write(s, start, length - start);
+    }
+  }
+
   /**
    * Emits character data subject to XML escaping.
    *
@@ -995,13 +1059,13 @@ public class XmlWriter {
     }
     endOpenTag();
     currentElement().unformattedChildren = true;
-    String escaped;
     if (useCData) {
-      escaped = "<![CDATA[" + StringUtil.xmlCDataEscape(s) + "]]>";
+      writer.write("<![CDATA[");
+      writer.write(StringUtil.xmlCDataEscape(s));
+      writer.write("]]>");
     } else {
-      escaped = StringUtil.xmlContentEscape(s);
+      writeContent(s);
     }
-    writer.write(escaped);
   }
 
   /**
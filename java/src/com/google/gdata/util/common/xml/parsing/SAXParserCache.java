@@ -0,0 +1,98 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util.common.xml.parsing;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.ParserAdapter;
+
+import java.io.IOException;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Per-thread cache of SAX parsers created by a single
+ * {@link SAXParserFactory}.  Creating a parser configures a new Xerces
+ * pipeline (scanners, symbol table and buffers), which is a significant part
+ * of the cost of parsing a small response; the cache keeps one parser per
+ * thread and reuses it across parses.
+ * <p>
+ * Parsers are reused as created by the factory, without calling
+ * {@link javax.xml.parsers.SAXParser#reset()}: a reset restores the
+ * entity resolver the parser was constructed with, which would drop the
+ * resolver installed by {@link SecureGenericXMLFactory}.  The parser itself
+ * reinitializes its scanning state at the start of every parse, and the
+ * content handler is cleared after each parse so that the cached parser
+ * doesn't retain the handler (and the data it built).
+ * <p>
+ * A parse started from within a handler on the same thread (while the
+ * cached parser is in use) gets a new parser instead of the cached one.
+ *
+ *
+ */
+public class SAXParserCache {
+
+  private final SAXParserFactory factory;
+
+  private final ThreadLocal<ParserAdapter> cachedParser =
+      new ThreadLocal<ParserAdapter>();
+
+  /**
+   * Creates a parser cache for parsers created by the given factory.  The
+   * factory must not be reconfigured after the cache is created.
+   */
+  public SAXParserCache(SAXParserFactory factory) {
+    this.factory = factory;
+  }
+
+  /** Returns the factory used to create parsers. */
+  public SAXParserFactory getFactory() {
+    return factory;
+  }
+
+  /**
+   * Parses an input source, sending SAX events to a content handler.
+   *
+   * @param is input source to parse.
+   * @param handler content handler receiving the parse events.
+   * @throws IOException if reading from the input source failed.
+   * @throws SAXException if the document could not be parsed.
+   * @throws ParserConfigurationException if a new parser could not be
+   *     created.
+   */
+  public void parse(InputSource is, ContentHandler handler)
+      throws IOException, SAXException, ParserConfigurationException {
+
+    // Take the cached parser out of the thread local while it is in use, so
+    // that a nested parse on this thread doesn't reuse it.
+    ParserAdapter pa = cachedParser.get();
+    if (pa == null) {
+      pa = new ParserAdapter(factory.newSAXParser().getParser());
+    } else {
+      cachedParser.set(null);
+    }
+
+    pa.setContentHandler(handler);
+    try {
+      pa.parse(is);
+    } finally {
+      pa.setContentHandler(null);
+      cachedParser.set(pa);
+    }
+  }
+}
@@ -17,19 +17,18 @@
 package com.google.gdata.wireformats;
 
 import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.util.common.xml.parsing.SAXParserCache;
 import com.google.gdata.util.common.xml.parsing.SecureGenericXMLFactory;
 import com.google.gdata.data.XmlEventSource;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
-import org.xml.sax.helpers.ParserAdapter;
 
 import java.io.IOException;
 import java.io.Reader;
 import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 /**
@@ -41,9 +40,9 @@ public class SaxEventSource implements XmlEventSource {
   private static final Logger logger =
       Logger.getLogger(SaxEventSource.class.getCanonicalName());
 
-  /** The SAXParserFactory used to create underlying SAXParser instances. */
-  private static final SAXParserFactory parserFactory = 
-      createSAXParserFactory();
+  /** The per-thread cache of SAXParser instances used for parsing. */
+  private static final SAXParserCache parserCache =
+      new SAXParserCache(createSAXParserFactory());
 
   /** Creates a secure SAX parser, which is secured against XXE attacks. */
   private static SAXParserFactory createSAXParserFactory() {
@@ -79,21 +78,12 @@ public class SaxEventSource implements XmlEventSource {
   }
   
   public void parse(DefaultHandler handler) throws IOException, SAXException {
-    SAXParser sp = createSaxParser();
-    ParserAdapter pa = new ParserAdapter(sp.getParser());
-    pa.setContentHandler(handler);
-    pa.parse(new InputSource(reader));
-  }
-
-  private SAXParser createSaxParser() {
     try {
-      return parserFactory.newSAXParser();
+      parserCache.parse(new InputSource(reader), handler);
     } catch (ParserConfigurationException e) {
       // The parser factory failing for any reasons should be considered
       // a bug in this class, since the parser configuration is hardcoded.
       throw new IllegalStateException("Invalid parser configuration", e);
-    } catch (SAXException e) {
-      throw new IllegalStateException("Failed to create a SAX parser", e);
     }
   }
 
@@ -18,6 +18,7 @@ package com.google.gdata.wireformats.output;
 
 import com.google.gdata.client.GDataProtocol;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -64,7 +65,8 @@ public abstract class CharacterGenerator<S> implements OutputGenerator<S> {
   protected Writer getContentWriter(OutputProperties outProps,
       OutputStream contentStream) throws IOException {
     String encoding = getCharsetEncoding(outProps);
-    return new OutputStreamWriter(contentStream, encoding);
+    return new BufferedWriter(
+        new OutputStreamWriter(contentStream, encoding));
   }
 
   public void generate(OutputStream contentStream, OutputProperties outProps, 
@@ -0,0 +1,227 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats.output.media;
+
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.data.IAtom;
+import com.google.gdata.data.IEntry;
+import com.google.gdata.data.media.MediaFileSource;
+import com.google.gdata.data.media.MediaSource;
+import com.google.gdata.util.ContentType;
+import com.google.gdata.wireformats.AltFormat;
+import com.google.gdata.wireformats.AltRegistry;
+import com.google.gdata.wireformats.output.ForwardingOutputProperties;
+import com.google.gdata.wireformats.output.OutputGenerator;
+import com.google.gdata.wireformats.output.OutputProperties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * The MediaMultipartWriter class writes MIME multipart/related content
+ * containing an Atom entry and its media, without building the JavaMail
+ * message model used by {@link MediaMultipartGenerator}.  The Atom part is
+ * generated into a small buffer, so that the total length of the content is
+ * known before it is written whenever the length of the media is, and the
+ * media part is then streamed from its source.  Media read from a
+ * {@link MediaFileSource} is transferred from the file channel.
+ *
+ * 
+ */
+public class MediaMultipartWriter {
+
+  private static final Random random = new SecureRandom();
+
+  private static final byte[] CRLF = { '\r', '\n' };
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final IEntry entry;
+  private final MediaSource media;
+  private final String boundary;
+
+  /** Encoded Atom part, from its opening boundary to its body. */
+  private byte[] atomPart;
+
+  /**
+   * Constructs a writer for an entry and its media.
+   */
+  public MediaMultipartWriter(IEntry entry, MediaSource media) {
+    Preconditions.checkNotNull(entry, "entry");
+    Preconditions.checkNotNull(media, "media");
+    this.entry = entry;
+    this.media = media;
+    this.boundary = "----=_Part_" + Long.toHexString(random.nextLong());
+  }
+
+  /**
+   * Returns the content type of the multipart content, including its
+   * boundary.
+   */
+  public ContentType getContentType() {
+    return new ContentType(ContentType.MULTIPART_RELATED.getMediaType()
+        + "; boundary=\"" + boundary + "\"");
+  }
+
+  /**
+   * Returns the length of the multipart content in bytes, or {@code -1} if
+   * the length of the media is unknown.
+   *
+   * @param outputProperties properties used to generate the Atom part.
+   * @throws IOException error generating the Atom part.
+   */
+  public long getContentLength(OutputProperties outputProperties)
+      throws IOException {
+    long mediaLength = media.getContentLength();
+    if (mediaLength < 0) {
+      return -1;
+    }
+    return getAtomPart(outputProperties).length
+        + getMediaHeaders().length + mediaLength + getTrailer().length;
+  }
+
+  /**
+   * Writes the multipart content to a stream.
+   *
+   * @param outputStream the target output stream.
+   * @param outputProperties properties used to generate the Atom part.
+   * @throws IOException error generating the content or writing it.
+   */
+  public void writeTo(OutputStream outputStream,
+      OutputProperties outputProperties) throws IOException {
+    outputStream.write(getAtomPart(outputProperties));
+    outputStream.write(getMediaHeaders());
+    writeMedia(outputStream);
+    outputStream.write(getTrailer());
+    outputStream.flush();
+  }
+
+  private byte[] getAtomPart(OutputProperties outputProperties)
+      throws IOException {
+    if (atomPart == null) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      writeHeaders(out, ContentType.ATOM.getMediaType(), null, false);
+      generateAtom(out, outputProperties);
+      atomPart = out.toByteArray();
+    }
+    return atomPart;
+  }
+
+  private byte[] getMediaHeaders() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeHeaders(out, media.getContentType(), media.getEtag(), true);
+    return out.toByteArray();
+  }
+
+  private byte[] getTrailer() {
+    return ascii("\r\n--" + boundary + "--\r\n");
+  }
+
+  private void writeHeaders(OutputStream out, String contentType,
+      String etag, boolean afterPart) throws IOException {
+    if (afterPart) {
+      out.write(CRLF);
+    }
+    out.write(ascii("--" + boundary + "\r\n"));
+    out.write(ascii("Content-Type: " + contentType + "\r\n"));
+    if (etag != null) {
+      out.write(ascii("ETag: " + etag + "\r\n"));
+    }
+    out.write(CRLF);
+  }
+
+  /**
+   * Generates the Atom part with the generator registered for Atom content.
+   */
+  private void generateAtom(OutputStream out,
+      OutputProperties outputProperties) throws IOException {
+    AltRegistry altRegistry = outputProperties.getAltRegistry();
+    final AltFormat altFormat = altRegistry.lookupType(ContentType.ATOM);
+    OutputGenerator<?> generator = altRegistry.getGenerator(altFormat);
+    if (generator == null) {
+      throw new IllegalStateException("Unable to generate Atom content");
+    }
+    Preconditions.checkArgument(
+        generator.getSourceType().isAssignableFrom(IAtom.class),
+        "Generator does not handle atom content");
+    @SuppressWarnings("unchecked")  // safe given above check
+    OutputGenerator<IAtom> atomGenerator = (OutputGenerator<IAtom>) generator;
+    atomGenerator.generate(out,
+        new ForwardingOutputProperties(outputProperties) {
+          @Override
+          public ContentType getContentType() {
+            return altFormat.getContentType();
+          }
+        }, entry);
+  }
+
+  /**
+   * Writes the media part body, straight from the file channel of a file
+   * source or from the source input stream otherwise.
+   */
+  private void writeMedia(OutputStream out) throws IOException {
+    if (media instanceof MediaFileSource) {
+      FileInputStream in =
+          new FileInputStream(((MediaFileSource) media).getMediaFile());
+      try {
+        FileChannel channel = in.getChannel();
+        WritableByteChannel target = Channels.newChannel(out);
+        long length = media.getContentLength() >= 0
+            ? media.getContentLength() : channel.size();
+        long position = 0;
+        while (position < length) {
+          long count = channel.transferTo(position, length - position, target);
+          if (count == 0 && position >= channel.size()) {
+            throw new EOFException("Media file truncated at " + position);
+          }
+          position += count;
+        }
+      } finally {
+        in.close();
+      }
+    } else {
+      InputStream in = media.getInputStream();
+      try {
+        byte[] buf = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buf)) >= 0) {
+          out.write(buf, 0, count);
+        }
+      } finally {
+        in.close();
+      }
+    }
+  }
+
+  private static byte[] ascii(String value) {
+    try {
+      return value.getBytes("US-ASCII");
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}